@@ -0,0 +1,96 @@
+package com.example;
+
+import com.example.photos.Album;
+import com.example.photos.AlbumCodec;
+import com.example.photos.OptionalPropertyCodecProvider;
+import com.mongodb.MongoClientSettings;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.pojo.Conventions;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Encode/decode cost of an {@link Album} with a large photo list, reflective pojo codec vs {@link AlbumCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AlbumCodecBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int photos;
+
+    private Codec<Album> pojoCodec;
+    private Codec<Album> albumCodec;
+    private Album album;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        var pojoRegistry = fromRegistries(fromProviders(
+                MongoClientSettings.getDefaultCodecRegistry(),
+                PojoCodecProvider.builder()
+                        .register("com.example.photos")
+                        .register(new OptionalPropertyCodecProvider())
+                        .conventions(Conventions.DEFAULT_CONVENTIONS)
+                        .build()));
+        pojoCodec = pojoRegistry.get(Album.class);
+        albumCodec = new AlbumCodec();
+
+        album = Album.of("benchmark");
+        album.setId(ObjectId.get());
+        var ids = new ArrayList<String>(photos);
+        for (int i = 0; i < photos; i++) {
+            ids.add(ObjectId.get().toHexString());
+        }
+        album.setPhotos(ids);
+        encoded = encode(albumCodec, album);
+    }
+
+    @Benchmark
+    public byte[] encodePojo() {
+        return encode(pojoCodec, album);
+    }
+
+    @Benchmark
+    public byte[] encodeAlbumCodec() {
+        return encode(albumCodec, album);
+    }
+
+    @Benchmark
+    public Album decodePojo() {
+        return decode(pojoCodec, encoded);
+    }
+
+    @Benchmark
+    public Album decodeAlbumCodec() {
+        return decode(albumCodec, encoded);
+    }
+
+    private static byte[] encode(Codec<Album> codec, Album value) {
+        var buffer = new BasicOutputBuffer();
+        try (var writer = new BsonBinaryWriter(buffer)) {
+            codec.encode(writer, value, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Album decode(Codec<Album> codec, byte[] bytes) {
+        try (var reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+            return codec.decode(reader, DecoderContext.builder().build());
+        }
+    }
+}
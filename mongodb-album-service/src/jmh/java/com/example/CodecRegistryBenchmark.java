@@ -0,0 +1,67 @@
+package com.example;
+
+import com.example.customers.Customer;
+import com.example.photos.Album;
+import com.example.photos.OptionalPropertyCodecProvider;
+import com.mongodb.MongoClientSettings;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.Conventions;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Per-call cost of resolving the album/customer codecs: the old repositories rebuilt the client settings,
+ * the pojo codec provider and the merged registry on every call, {@link MongoCollections} builds them once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecRegistryBenchmark {
+
+    private CodecRegistry shared;
+
+    @Setup
+    public void setup() {
+        shared = MongoCollections.codecRegistry(MongoClientSettings.builder().build().getCodecRegistry());
+    }
+
+    @Benchmark
+    public Codec<Album> albumCodecPerCall() {
+        var providers = fromProviders(
+                MongoClientSettings.builder().build().getCodecRegistry(),
+                PojoCodecProvider.builder()
+                        .register("com.example.photos")
+                        .register(new OptionalPropertyCodecProvider())
+                        .conventions(Conventions.DEFAULT_CONVENTIONS)
+                        .build());
+        return fromRegistries(List.of(providers)).get(Album.class);
+    }
+
+    @Benchmark
+    public Codec<Album> albumCodecShared() {
+        return shared.get(Album.class);
+    }
+
+    @Benchmark
+    public Codec<Customer> customerCodecPerCall() {
+        var providers = fromProviders(
+                MongoClientSettings.builder().build().getCodecRegistry(),
+                PojoCodecProvider.builder()
+                        .register("com.example.customers")
+                        .conventions(Conventions.DEFAULT_CONVENTIONS)
+                        .build());
+        return fromRegistries(List.of(providers)).get(Customer.class);
+    }
+
+    @Benchmark
+    public Codec<Customer> customerCodecShared() {
+        return shared.get(Customer.class);
+    }
+}
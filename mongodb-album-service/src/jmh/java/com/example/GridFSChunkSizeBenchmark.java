@@ -0,0 +1,66 @@
+package com.example;
+
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBuckets;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload and download throughput of a 4 MB photo across GridFS chunk sizes.
+ * Needs a running mongod, {@code -Dmongo.uri=...} defaults to {@code mongodb://localhost:27017}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GridFSChunkSizeBenchmark {
+    private static final int PHOTO_SIZE = 4 * 1024 * 1024;
+    private static final int PART_SIZE = 64 * 1024;
+
+    @Param({"4096", "65536", "261120", "1048576"})
+    private int chunkSize;
+
+    private MongoClient client;
+    private GridFSBucket bucket;
+    private byte[] photo;
+    private ObjectId stored;
+
+    @Setup
+    public void setup() {
+        client = MongoClients.create(System.getProperty("mongo.uri", "mongodb://localhost:27017"));
+        bucket = GridFSBuckets.create(client.getDatabase("photos-benchmark"));
+        photo = new byte[PHOTO_SIZE];
+        ThreadLocalRandom.current().nextBytes(photo);
+        stored = upload();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Mono.from(client.getDatabase("photos-benchmark").drop()).block();
+        client.close();
+    }
+
+    @Benchmark
+    public ObjectId upload() {
+        var parts = Flux.range(0, PHOTO_SIZE / PART_SIZE)
+                .map(i -> ByteBuffer.wrap(photo, i * PART_SIZE, PART_SIZE));
+        return Mono.from(bucket.uploadFromPublisher("benchmark.jpg", parts, new GridFSUploadOptions().chunkSizeBytes(chunkSize)))
+                .block();
+    }
+
+    @Benchmark
+    public long download() {
+        return Flux.from(bucket.downloadToPublisher(stored))
+                .map(ByteBuffer::remaining)
+                .reduce(0L, Long::sum)
+                .block();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBuckets;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download throughput of a photo served from GridFS chunks and from the memory mapped {@link LocalPhotoStore}.
+ * Needs a running mongod, {@code -Dmongo.uri=...} defaults to {@code mongodb://localhost:27017}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PhotoStoreBenchmark {
+
+    @Param({"262144", "4194304", "33554432"})
+    private int photoSize;
+
+    private MongoClient client;
+    private GridFSBucket bucket;
+    private LocalPhotoStore localStore;
+    private Path root;
+    private GridFSFile gridFSFile;
+    private GridFSFile localFile;
+
+    @Setup
+    public void setup() throws IOException {
+        client = MongoClients.create(System.getProperty("mongo.uri", "mongodb://localhost:27017"));
+        var database = client.getDatabase("photos-benchmark");
+        bucket = GridFSBuckets.create(database);
+        root = Files.createTempDirectory("photo-store-benchmark");
+        localStore = new LocalPhotoStore(root, database.getCollection("fs.files"), database.getCollection("local_contents"));
+
+        var photo = new byte[photoSize];
+        ThreadLocalRandom.current().nextBytes(photo);
+        var gridFSId = Mono.from(bucket.uploadFromPublisher("benchmark.jpg", Mono.just(ByteBuffer.wrap(photo)),
+                new GridFSUploadOptions().chunkSizeBytes(261120))).block();
+        var localId = localStore.write("benchmark.jpg", Mono.just(new ByteArrayInputStream(photo)), 261120, Document::new, null).block();
+        gridFSFile = Mono.from(bucket.find(Filters.eq("_id", gridFSId)).first()).block();
+        localFile = Mono.from(bucket.find(Filters.eq("_id", localId)).first()).block();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Mono.from(client.getDatabase("photos-benchmark").drop()).block();
+        client.close();
+        try (var paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long gridfs() {
+        return drain(Flux.from(bucket.downloadToPublisher(gridFSFile.getObjectId())));
+    }
+
+    @Benchmark
+    public long local() {
+        return drain(localStore.read(localFile, ByteRange.full(localFile.getLength())));
+    }
+
+    // reads every byte, as writing the response would
+    private static long drain(Flux<ByteBuffer> content) {
+        return content
+                .map(buffer -> {
+                    long sum = 0;
+                    while (buffer.hasRemaining()) {
+                        sum += buffer.get();
+                    }
+                    return sum;
+                })
+                .reduce(0L, Long::sum)
+                .block();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.photos;
+
+import io.micronaut.http.MediaType;
+import io.micronaut.http.multipart.PartData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated to turn 1 MB of multipart data into GridFS chunks, read {@code gc.alloc.rate.norm} of the
+ * gc profiler (enabled in build.gradle). {@code heapCopy} is the former path, {@code getByteBuffer()} per part
+ * and the copy into the bucket's chunk buffers, {@code chunkBuffer} is {@link GridFSChunkWriter}'s single copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UploadAllocationBenchmark {
+    private static final int UPLOAD_SIZE = 1024 * 1024;
+    private static final int PART_SIZE = 8192;
+
+    @Param({"261120"})
+    private int chunkSize;
+
+    private PartData[] parts;
+
+    @Setup
+    public void setup() {
+        var content = ByteBuffer.allocateDirect(UPLOAD_SIZE);
+        parts = new PartData[UPLOAD_SIZE / PART_SIZE];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new DirectPartData(content.slice(i * PART_SIZE, PART_SIZE));
+        }
+    }
+
+    @Benchmark
+    public void heapCopy(Blackhole blackhole) throws Exception {
+        var chunk = new byte[chunkSize];
+        int position = 0;
+        for (var part : parts) {
+            var buffer = part.getByteBuffer();
+            while (buffer.hasRemaining()) {
+                int take = Math.min(buffer.remaining(), chunkSize - position);
+                buffer.get(chunk, position, take);
+                position += take;
+                if (position == chunkSize) {
+                    blackhole.consume(chunk);
+                    chunk = new byte[chunkSize];
+                    position = 0;
+                }
+            }
+        }
+        blackhole.consume(chunk);
+    }
+
+    @Benchmark
+    public void chunkBuffer(Blackhole blackhole) throws Exception {
+        var buffer = new GridFSChunkWriter.ChunkBuffer(chunkSize, null);
+        for (var part : parts) {
+            blackhole.consume(buffer.fill(part.getInputStream()));
+        }
+        blackhole.consume(buffer.remainder());
+    }
+
+    // stands in for a pooled direct Netty buffer
+    private record DirectPartData(ByteBuffer data) implements PartData {
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private final ByteBuffer buffer = data.duplicate();
+
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!buffer.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, buffer.remaining());
+                    buffer.get(b, off, n);
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public byte[] getBytes() {
+            var bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public ByteBuffer getByteBuffer() {
+            return ByteBuffer.wrap(getBytes());
+        }
+
+        @Override
+        public Optional<MediaType> getContentType() {
+            return Optional.empty();
+        }
+    }
+}
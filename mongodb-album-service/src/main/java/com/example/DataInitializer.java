@@ -14,9 +14,19 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class DataInitializer {
     private final CustomerRepository customerRepository;
+    private final SeedProperties seedProperties;
+    private final DataSeeder dataSeeder;
 
     @EventListener
     public void onStart(ServerStartupEvent event) {
+        if (this.seedProperties.enabled()) {
+            log.info("seeding synthetic data...");
+            this.dataSeeder.seed().subscribe(
+                    report -> log.info("seeding done"),
+                    error -> log.warn("seeding failed: {}", error.getMessage())
+            );
+            return;
+        }
         log.debug("starting data initialization...");
         this.customerRepository.init();
     }
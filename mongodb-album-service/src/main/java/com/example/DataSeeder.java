@@ -0,0 +1,194 @@
+package com.example;
+
+import com.example.customers.Address;
+import com.example.customers.Customer;
+import com.example.customers.CustomerRepository;
+import com.example.photos.Album;
+import com.example.photos.AlbumArchiver;
+import com.example.photos.AlbumRepository;
+import com.example.photos.GridFSProperties;
+import com.example.photos.ImageHeader;
+import com.example.photos.PhotoStores;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.Filters;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Generates customers, photos and albums at production scale, see {@link SeedProperties}. Photos are small
+ * rendered JPEGs padded with random bytes after the end of image marker, so every blob is distinct and still
+ * reads as an image. Customers and albums are inserted with unordered batches, all phases keep at most
+ * {@code concurrency} writes in flight and documents are generated as the writes take them.
+ */
+@Singleton
+@RequiredArgsConstructor
+@Slf4j
+public class DataSeeder {
+    private static final String[] FIRST_NAMES = {"Ada", "Alan", "Grace", "Linus", "Margaret", "Dennis", "Barbara", "Ken", "Frances", "Tim"};
+    private static final String[] LAST_NAMES = {"Lovelace", "Turing", "Hopper", "Torvalds", "Hamilton", "Ritchie", "Liskov", "Thompson", "Allen", "Berners-Lee"};
+    private static final String[] CITIES = {"London", "Paris", "Berlin", "Shanghai", "Guangzhou", "New York", "Tokyo", "Sydney", "Toronto", "Nairobi"};
+    private static final int[][] IMAGE_SIZES = {{320, 240}, {640, 480}, {800, 600}, {1024, 768}};
+
+    private final SeedProperties properties;
+    private final MongoCollections mongoCollections;
+    private final CustomerRepository customerRepository;
+    private final AlbumRepository albumRepository;
+    private final PhotoStores photoStores;
+    private final GridFSProperties gridFSProperties;
+
+    public Mono<SeedReport> seed() {
+        var random = new Random(properties.randomSeed());
+        var photoIds = new ObjectId[properties.photos()];
+        return clear()
+                .then(seedPhotos(random, photoIds))
+                .flatMap(photos -> seedCustomers(random)
+                        .flatMap(customers -> seedAlbums(random, photoIds)
+                                .map(albums -> new SeedReport(List.of(photos, customers, albums)))))
+                .doOnNext(report -> report.phases().forEach(phase -> log.info("seeded {}", phase)));
+    }
+
+    // empties the collections instead of dropping them, dropping would also drop the indexes created at startup
+    private Mono<Void> clear() {
+        if (!properties.drop()) {
+            return Mono.empty();
+        }
+        return Flux.just("albums", "fs.files", "fs.chunks", "local_contents")
+                .concatMap(collection -> mongoCollections.get("photos", collection, Document.class).deleteMany(Filters.empty()))
+                .thenMany(mongoCollections.get("userdb", "customers", Document.class).deleteMany(Filters.empty()))
+                .then();
+    }
+
+    private Mono<SeedReport.Phase> seedPhotos(Random random, ObjectId[] photoIds) {
+        var templates = Arrays.stream(IMAGE_SIZES).map(DataSeeder::render).toList();
+        var bytes = new AtomicLong();
+        var chunkSize = gridFSProperties.chunkSize();
+        return measure("photos", bytes, Flux.range(0, properties.photos())
+                .map(i -> {
+                    int template = random.nextInt(templates.size());
+                    return new Photo(i, template, pad(templates.get(template), logNormal(random, properties.photoBytes(), 0.5, Integer.MAX_VALUE - 8), random));
+                })
+                .flatMap(photo -> {
+                    var crc = new CRC32();
+                    crc.update(photo.content());
+                    var metadata = new Document("contentType", "image/jpeg")
+                            .append(AlbumArchiver.CRC32, crc.getValue())
+                            .append(ImageHeader.WIDTH, IMAGE_SIZES[photo.template()][0])
+                            .append(ImageHeader.HEIGHT, IMAGE_SIZES[photo.template()][1]);
+                    return photoStores.writer()
+                            .write("seed-" + photo.index() + ".jpg", Mono.just(new ByteArrayInputStream(photo.content())), chunkSize, () -> metadata, null)
+                            .doOnNext(id -> {
+                                photoIds[photo.index()] = id;
+                                bytes.addAndGet(photo.content().length);
+                            });
+                }, properties.concurrency())
+                .count());
+    }
+
+    private Mono<SeedReport.Phase> seedCustomers(Random random) {
+        return measure("customers", new AtomicLong(), Flux.range(0, properties.customers())
+                .map(i -> Customer.of(
+                        pick(random, FIRST_NAMES) + " " + pick(random, LAST_NAMES),
+                        18 + random.nextInt(70),
+                        Address.of(random.nextInt(200) + 1 + " Main Street", pick(random, CITIES), String.valueOf(10000 + random.nextInt(90000)))))
+                .buffer(properties.batchSize())
+                .flatMap(batch -> inserted(customerRepository.insertUnordered(batch), batch.size()), properties.concurrency())
+                .reduce(0L, Long::sum));
+    }
+
+    private Mono<SeedReport.Phase> seedAlbums(Random random, ObjectId[] photoIds) {
+        var stored = Arrays.stream(photoIds).filter(id -> id != null).map(ObjectId::toHexString).toArray(String[]::new);
+        return measure("albums", new AtomicLong(), Flux.range(0, properties.albums())
+                .map(i -> {
+                    int size = stored.length == 0 ? 0 : logNormal(random, properties.photosPerAlbumMedian(), 1.0, properties.maxPhotosPerAlbum());
+                    var photos = new ArrayList<String>(size);
+                    for (int p = 0; p < size; p++) {
+                        photos.add(stored[random.nextInt(stored.length)]);
+                    }
+                    var album = Album.of(pick(random, CITIES) + " " + (i + 1));
+                    album.setPhotos(photos.stream().distinct().toList());
+                    album.setCreatedAt(Instant.now().minus(Duration.ofDays(random.nextInt(3650))));
+                    return album;
+                })
+                .buffer(properties.batchSize())
+                .flatMap(batch -> inserted(albumRepository.insertUnordered(batch), batch.size()), properties.concurrency())
+                .reduce(0L, Long::sum));
+    }
+
+    // documents of a batch that made it in, the failed ones are logged
+    private static Mono<Long> inserted(Mono<Integer> insert, int batchSize) {
+        return insert
+                .map(Integer::longValue)
+                .onErrorResume(MongoBulkWriteException.class, e -> {
+                    log.warn("{} of {} documents failed to insert: {}", e.getWriteErrors().size(), batchSize, e.getWriteErrors().getFirst().getMessage());
+                    return Mono.just((long) batchSize - e.getWriteErrors().size());
+                });
+    }
+
+    private static Mono<SeedReport.Phase> measure(String name, AtomicLong bytes, Mono<Long> documents) {
+        return Mono.defer(() -> {
+            var started = System.nanoTime();
+            return documents.map(count -> new SeedReport.Phase(name, count, bytes.get(), Duration.ofNanos(System.nanoTime() - started)));
+        });
+    }
+
+    // a median of m with most values within a factor of e^sigma of it, at least 1
+    private static int logNormal(Random random, int median, double sigma, int max) {
+        return (int) Math.max(1, Math.min(max, Math.round(median * Math.exp(sigma * random.nextGaussian()))));
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static byte[] pad(byte[] template, int size, Random random) {
+        var content = Arrays.copyOf(template, Math.max(size, template.length));
+        var padding = new byte[content.length - template.length];
+        random.nextBytes(padding);
+        System.arraycopy(padding, 0, content, template.length, padding.length);
+        return content;
+    }
+
+    // a gradient, compresses to a few KB whatever the dimensions
+    private static byte[] render(int[] size) {
+        var image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+        var graphics = image.createGraphics();
+        try {
+            graphics.setPaint(new GradientPaint(0, 0, Color.BLUE, size[0], size[1], Color.ORANGE));
+            graphics.fillRect(0, 0, size[0], size[1]);
+        } finally {
+            graphics.dispose();
+        }
+        var out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "jpeg", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private record Photo(int index, int template, byte[] content) {
+    }
+}
@@ -0,0 +1,75 @@
+package com.example;
+
+import com.example.customers.CustomerCodec;
+import com.example.photos.AlbumCodec;
+import com.example.photos.OptionalPropertyCodecProvider;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micronaut.configuration.mongo.core.DefaultMongoConfiguration;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.Conventions;
+import org.bson.codecs.pojo.PojoCodecProvider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * Builds the application codec registry once at startup and hands out cached collection handles.
+ * {@link MongoCollection} instances are immutable, so one handle can be shared by all requests.
+ * <p>
+ * {@link AlbumCodec} and {@link CustomerCodec} take precedence, the pojo codec provider is kept as the
+ * fallback for any other type in the application packages.
+ */
+@Singleton
+@Slf4j
+public class MongoCollections {
+    private final MongoClient mongoClient;
+    private final CodecRegistry codecRegistry;
+    private final Map<Key, MongoCollection<?>> collections = new ConcurrentHashMap<>();
+
+    public MongoCollections(MongoClient mongoClient, DefaultMongoConfiguration mongoConfiguration) {
+        this.mongoClient = mongoClient;
+        this.codecRegistry = codecRegistry(mongoConfiguration.getClientSettings().build().getCodecRegistry());
+    }
+
+    public static CodecRegistry codecRegistry(CodecRegistry defaults) {
+        var codecs = fromCodecs(new AlbumCodec(), new CustomerCodec());
+        var providers = fromProviders(
+                codecs,
+                defaults,
+                PojoCodecProvider.builder()
+                        .register("com.example.photos", "com.example.customers")
+                        .register(new OptionalPropertyCodecProvider())
+                        .conventions(Conventions.DEFAULT_CONVENTIONS)
+                        .build());
+        return fromRegistries(List.of(providers));
+    }
+
+    public CodecRegistry codecRegistry() {
+        return codecRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> MongoCollection<T> get(String database, String collection, Class<T> documentClass) {
+        return (MongoCollection<T>) collections.computeIfAbsent(
+                new Key(database, collection, documentClass),
+                key -> {
+                    log.debug("creating collection handle: {}.{} of {}", database, collection, documentClass.getName());
+                    return mongoClient
+                            .getDatabase(database)
+                            .getCollection(collection, documentClass)
+                            .withCodecRegistry(codecRegistry);
+                }
+        );
+    }
+
+    private record Key(String database, String collection, Class<?> documentClass) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.example;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every command the driver sends as {@code mongodb.command}, a percentile histogram tagged with database,
+ * collection, command and outcome, and logs commands slower than the threshold. Commands without a collection,
+ * such as {@code ping} or a database level {@code aggregate: 1}, are tagged with collection {@code none}.
+ */
+@Slf4j
+public class MongoCommandMetrics implements CommandListener {
+    // commands whose first field does not name a collection
+    private static final Set<String> NO_COLLECTION = Set.of(
+            "hello", "ismaster", "isMaster", "ping", "buildInfo", "endSessions", "saslStart", "saslContinue",
+            "killCursors", "commitTransaction", "abortTransaction", "listCollections", "listDatabases", "dropDatabase");
+    private static final String NONE = "none";
+
+    private final MeterRegistry registry;
+    private final long slowNanos;
+    private final Map<Integer, String> collections = new ConcurrentHashMap<>();
+    // registering rebuilds the meter id and runs the registry filters, so each tag set is registered once
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+    public MongoCommandMetrics(MeterRegistry registry, MongoMetricsProperties properties) {
+        this.registry = registry;
+        this.slowNanos = properties.slowCommandThreshold().toNanos();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        collections.put(event.getRequestId(), collection(event));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getRequestId(), event.getDatabaseName(), event.getCommandName(), "success", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getRequestId(), event.getDatabaseName(), event.getCommandName(), "failure", event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void record(int requestId, String database, String command, String outcome, long nanos) {
+        var collection = collections.remove(requestId);
+        var name = collection == null ? NONE : collection;
+        timers.computeIfAbsent(new TimerKey(database, name, command, outcome), this::timer)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= slowNanos) {
+            log.warn("slow mongodb command {} on {}.{} took {} ms ({})", command, database, name, TimeUnit.NANOSECONDS.toMillis(nanos), outcome);
+        }
+    }
+
+    private Timer timer(TimerKey key) {
+        return Timer.builder("mongodb.command")
+                .description("MongoDB command latency")
+                .tags("database", key.database(), "collection", key.collection(), "command", key.command(), "outcome", key.outcome())
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static String collection(CommandStartedEvent event) {
+        var command = event.getCommandName();
+        if (NO_COLLECTION.contains(command)) {
+            return NONE;
+        }
+        BsonValue value = "getMore".equals(command)
+                ? event.getCommand().get("collection")
+                : event.getCommand().get(command);
+        return value != null && value.isString() ? value.asString().getValue() : NONE;
+    }
+
+    private record TimerKey(String database, String collection, String command, String outcome) {
+    }
+}
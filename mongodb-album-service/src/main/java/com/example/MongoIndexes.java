@@ -0,0 +1,88 @@
+package com.example;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The secondary indexes the queries of the application rely on, created at startup. Creating an index that
+ * already exists with the same keys and options is a no-op, so provisioning runs on every start.
+ * <p>
+ * Indexes the application needs for correctness, the unique hash of deduplication and the GridFS chunk index,
+ * are still created by their owners before first use.
+ */
+@Singleton
+@Slf4j
+public class MongoIndexes {
+    static final List<Index> INDEXES = List.of(
+            // albums by name and albums containing a photo, paged by _id
+            new Index("photos", "albums", new IndexModel(Indexes.ascending("name", "_id"), new IndexOptions().name("name_id"))),
+            new Index("photos", "albums", new IndexModel(Indexes.ascending("photos", "_id"), new IndexOptions().name("photos_id"))),
+            new Index("userdb", "customers", new IndexModel(Indexes.ascending("address.city", "age"), new IndexOptions().name("address_city_age"))),
+            // customer search, a collection has at most one text index so every searched field is in it
+            new Index("userdb", "customers", new IndexModel(
+                    Indexes.compoundIndex(Indexes.text("name"), Indexes.text("address.street"), Indexes.text("address.city"), Indexes.text("address.zip")),
+                    new IndexOptions().name("customers_text")
+                            .weights(new Document("name", 10).append("address.city", 5).append("address.street", 2).append("address.zip", 2)))),
+            // photo listings by content type, paged by _id
+            new Index("photos", "fs.files", new IndexModel(Indexes.ascending("metadata.contentType", "_id"), new IndexOptions().name("metadata_contentType_id"))),
+            // photo listings by image header fields, sparse as most files are not images
+            new Index("photos", "fs.files", new IndexModel(Indexes.ascending("metadata.width"),
+                    new IndexOptions().name("metadata_width").partialFilterExpression(Filters.exists("metadata.width")))),
+            new Index("photos", "fs.files", new IndexModel(Indexes.ascending("metadata.takenAt"),
+                    new IndexOptions().name("metadata_takenAt").partialFilterExpression(Filters.exists("metadata.takenAt")))),
+            new Index("photos", "fs.files", new IndexModel(Indexes.ascending("metadata.derivativeOf", "metadata.variant"),
+                    new IndexOptions().name("metadata_derivativeOf_variant").partialFilterExpression(Filters.exists("metadata.derivativeOf"))))
+    );
+
+    private final MongoCollections mongoCollections;
+    private final Mono<Void> provisioned;
+
+    public MongoIndexes(MongoCollections mongoCollections) {
+        this.mongoCollections = mongoCollections;
+        this.provisioned = Mono.defer(this::createAll)
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+    }
+
+    @EventListener
+    void onStartup(StartupEvent event) {
+        ensureIndexes().subscribe(
+                null,
+                error -> log.warn("failed to provision indexes: {}", error.getMessage()),
+                () -> log.debug("indexes provisioned")
+        );
+    }
+
+    public Mono<Void> ensureIndexes() {
+        return provisioned;
+    }
+
+    private Mono<Void> createAll() {
+        Map<String, List<Index>> byCollection = INDEXES.stream()
+                .collect(Collectors.groupingBy(index -> index.database() + "." + index.collection()));
+        return Flux.fromIterable(byCollection.values())
+                .concatMap(indexes -> {
+                    var first = indexes.getFirst();
+                    var models = indexes.stream().map(Index::model).toList();
+                    return Flux.from(mongoCollections.get(first.database(), first.collection(), Document.class).createIndexes(models))
+                            .doOnNext(name -> log.debug("index {} on {}.{} is in place", name, first.database(), first.collection()));
+                })
+                .then();
+    }
+
+    record Index(String database, String collection, IndexModel model) {
+    }
+}
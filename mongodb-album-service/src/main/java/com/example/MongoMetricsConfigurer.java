@@ -0,0 +1,29 @@
+package com.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.configuration.mongo.core.DefaultMongoConfiguration;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Adds the metrics listeners to the MongoDB client settings before the client is created.
+ */
+@Singleton
+@Requires(beans = MeterRegistry.class)
+@Requires(property = "metrics.mongodb.enabled", notEquals = "false")
+@RequiredArgsConstructor
+public class MongoMetricsConfigurer implements BeanCreatedEventListener<DefaultMongoConfiguration> {
+    private final MeterRegistry registry;
+    private final MongoMetricsProperties properties;
+
+    @Override
+    public DefaultMongoConfiguration onCreated(BeanCreatedEvent<DefaultMongoConfiguration> event) {
+        var configuration = event.getBean();
+        configuration.getClientSettings().addCommandListener(new MongoCommandMetrics(registry, properties));
+        configuration.getConnectionPool().addConnectionPoolListener(new MongoPoolMetrics(registry));
+        return configuration;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
+
+/**
+ * MongoDB driver metrics, commands slower than {@code slowCommandThreshold} are logged.
+ */
+@ConfigurationProperties("metrics.mongodb")
+public record MongoMetricsProperties(
+        @Bindable(defaultValue = "true") boolean enabled,
+        @Bindable(defaultValue = "200ms") Duration slowCommandThreshold
+) {
+}
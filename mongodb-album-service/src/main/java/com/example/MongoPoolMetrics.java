@@ -0,0 +1,138 @@
+package com.example;
+
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Connection pool meters per server: pool size, connections checked out and waiting, saturation (checked out
+ * over the maximum pool size), the checkout wait time as {@code mongodb.pool.checkout} and failed checkouts by
+ * reason. Checkouts failing with reason {@code TIMEOUT} are the requests the pool could not serve in time,
+ * the driver no longer has a separate wait queue limit.
+ */
+public class MongoPoolMetrics implements ConnectionPoolListener {
+    private final MeterRegistry registry;
+    private final Map<ServerId, Pool> pools = new ConcurrentHashMap<>();
+
+    public MongoPoolMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    private static final class Pool {
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicInteger checkedOut = new AtomicInteger();
+        final AtomicInteger waiting = new AtomicInteger();
+        final int maxSize;
+        final List<Meter> meters = new ArrayList<>();
+
+        Pool(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        var pool = new Pool(event.getSettings().getMaxSize());
+        var tags = tags(event.getServerId());
+        pool.meters.add(Gauge.builder("mongodb.pool.size", pool.size, AtomicInteger::get)
+                .description("connections in the pool").tags(tags).register(registry));
+        pool.meters.add(Gauge.builder("mongodb.pool.checkedout", pool.checkedOut, AtomicInteger::get)
+                .description("connections in use").tags(tags).register(registry));
+        pool.meters.add(Gauge.builder("mongodb.pool.waiting", pool.waiting, AtomicInteger::get)
+                .description("checkouts waiting for a connection").tags(tags).register(registry));
+        pool.meters.add(Gauge.builder("mongodb.pool.max", pool, p -> p.maxSize)
+                .description("maximum pool size").tags(tags).register(registry));
+        pool.meters.add(Gauge.builder("mongodb.pool.saturation", pool, p -> p.maxSize == 0 ? 0 : (double) p.checkedOut.get() / p.maxSize)
+                .description("connections in use over the maximum pool size").tags(tags).register(registry));
+        pools.put(event.getServerId(), pool);
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        var pool = pools.remove(event.getServerId());
+        if (pool != null) {
+            pool.meters.forEach(registry::remove);
+        }
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        update(event.getServerId(), pool -> pool.waiting.incrementAndGet());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        var serverId = event.getConnectionId().getServerId();
+        update(serverId, pool -> {
+            pool.waiting.decrementAndGet();
+            pool.checkedOut.incrementAndGet();
+        });
+        checkoutTimer(serverId, "success").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        update(event.getServerId(), pool -> pool.waiting.decrementAndGet());
+        checkoutTimer(event.getServerId(), "failure").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        Counter.builder("mongodb.pool.checkout.failures")
+                .description("connection checkouts that failed, by reason")
+                .tags(tags(event.getServerId()).and("reason", event.getReason().name()))
+                .register(registry)
+                .increment();
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        update(event.getConnectionId().getServerId(), pool -> pool.checkedOut.decrementAndGet());
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        update(event.getConnectionId().getServerId(), pool -> pool.size.incrementAndGet());
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        update(event.getConnectionId().getServerId(), pool -> pool.size.decrementAndGet());
+    }
+
+    private Timer checkoutTimer(ServerId serverId, String outcome) {
+        return Timer.builder("mongodb.pool.checkout")
+                .description("time waited for a pooled connection")
+                .tags(tags(serverId).and("outcome", outcome))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private void update(ServerId serverId, Consumer<Pool> update) {
+        var pool = pools.get(serverId);
+        if (pool != null) {
+            update.accept(pool);
+        }
+    }
+
+    private static Tags tags(ServerId serverId) {
+        return Tags.of("cluster", serverId.getClusterId().getValue(), "server", serverId.getAddress().toString());
+    }
+}
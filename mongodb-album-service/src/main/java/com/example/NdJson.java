@@ -0,0 +1,85 @@
+package com.example;
+
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micronaut.jackson.JacksonFeatures;
+import io.micronaut.json.JsonMapper;
+import jakarta.inject.Singleton;
+import org.reactivestreams.Publisher;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a publisher as newline delimited JSON, one document per line as it arrives, so the response
+ * is streamed with the demand of the client instead of being buffered as one array. Request bodies are split
+ * into lines as their chunks arrive.
+ * <p>
+ * Lines are written without indentation whatever {@code jackson.serialization.indentOutput} says, a document
+ * spread over several lines is not valid NDJSON.
+ */
+@Singleton
+public class NdJson {
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+    private static final byte NEWLINE = '\n';
+
+    private final JsonMapper jsonMapper;
+
+    public NdJson(JsonMapper jsonMapper) {
+        this.jsonMapper = jsonMapper.cloneWithFeatures(new JacksonFeatures().addFeature(SerializationFeature.INDENT_OUTPUT, false));
+    }
+
+    public Flux<byte[]> write(Publisher<?> source) {
+        return Flux.from(source).map(this::line);
+    }
+
+    /**
+     * Splits a streamed body into its lines, without the line terminators. Blank lines are kept so callers can
+     * count line numbers, a last line without a terminating newline is emitted when the body completes.
+     */
+    public Flux<byte[]> lines(Publisher<byte[]> body) {
+        return Flux.defer(() -> {
+            var pending = new ByteArrayOutputStream();
+            return Flux.from(body)
+                    .concatMapIterable(chunk -> split(chunk, pending))
+                    .concatWith(Mono.fromSupplier(() -> pending.size() == 0 ? null : trim(pending.toByteArray())));
+        });
+    }
+
+    private static List<byte[]> split(byte[] chunk, ByteArrayOutputStream pending) {
+        List<byte[]> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < chunk.length; i++) {
+            if (chunk[i] == NEWLINE) {
+                pending.write(chunk, start, i - start);
+                lines.add(trim(pending.toByteArray()));
+                pending.reset();
+                start = i + 1;
+            }
+        }
+        pending.write(chunk, start, chunk.length - start);
+        return lines;
+    }
+
+    // drops the carriage return of CRLF terminated lines
+    private static byte[] trim(byte[] line) {
+        return line.length > 0 && line[line.length - 1] == '\r' ? Arrays.copyOf(line, line.length - 1) : line;
+    }
+
+    private byte[] line(Object value) {
+        try {
+            var json = jsonMapper.writeValueAsBytes(value);
+            var line = new byte[json.length + 1];
+            System.arraycopy(json, 0, line, 0, json.length);
+            line[json.length] = NEWLINE;
+            return line;
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
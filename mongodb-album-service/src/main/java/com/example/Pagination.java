@@ -0,0 +1,30 @@
+package com.example;
+
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+/**
+ * Keyset pagination over {@code _id}: a page holds the documents after the last id of the previous page.
+ */
+public final class Pagination {
+    public static final String DEFAULT_LIMIT = "100";
+    public static final int MAX_LIMIT = 1000;
+    public static final int BATCH_SIZE = 500;
+
+    private Pagination() {
+    }
+
+    public static Bson after(ObjectId after) {
+        return after == null ? Filters.empty() : Filters.gt("_id", after);
+    }
+
+    public static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    // a limit of 0 reads to the end of the cursor
+    public static int batchSize(int limit) {
+        return limit > 0 ? Math.min(limit, BATCH_SIZE) : BATCH_SIZE;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * Synthetic data for capacity planning, generated at startup instead of the sample customers when
+ * {@code enabled}. Album sizes follow a log-normal distribution around {@code photosPerAlbumMedian}, capped at
+ * {@code maxPhotosPerAlbum}, photo sizes one around {@code photoBytes}. Writes go out {@code batchSize}
+ * documents, or one photo, at a time with at most {@code concurrency} in flight. The same {@code randomSeed}
+ * generates the same data. With {@code drop} the albums, photos and customers are deleted first, their indexes
+ * are kept.
+ */
+@ConfigurationProperties("seed")
+public record SeedProperties(
+        @Bindable(defaultValue = "false") boolean enabled,
+        @Bindable(defaultValue = "false") boolean drop,
+        @Bindable(defaultValue = "10000") int customers,
+        @Bindable(defaultValue = "1000") int albums,
+        @Bindable(defaultValue = "5000") int photos,
+        @Bindable(defaultValue = "65536") int photoBytes,
+        @Bindable(defaultValue = "20") int photosPerAlbumMedian,
+        @Bindable(defaultValue = "5000") int maxPhotosPerAlbum,
+        @Bindable(defaultValue = "1000") int batchSize,
+        @Bindable(defaultValue = "8") int concurrency,
+        @Bindable(defaultValue = "42") long randomSeed
+) {
+}
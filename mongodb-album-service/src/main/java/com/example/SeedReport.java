@@ -0,0 +1,27 @@
+package com.example;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Documents written by a seeding run and the throughput of each phase.
+ */
+public record SeedReport(List<Phase> phases) {
+
+    public record Phase(String name, long documents, long bytes, Duration elapsed) {
+
+        public double documentsPerSecond() {
+            return elapsed.isZero() ? documents : documents * 1000.0 / elapsed.toMillis();
+        }
+
+        public double megabytesPerSecond() {
+            return elapsed.isZero() ? 0 : bytes / 1024.0 / 1024.0 * 1000.0 / elapsed.toMillis();
+        }
+
+        @Override
+        public String toString() {
+            return "%s: %d documents, %d bytes in %d ms (%.0f docs/s, %.1f MB/s)"
+                    .formatted(name, documents, bytes, elapsed.toMillis(), documentsPerSecond(), megabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.customers;
+
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+/**
+ * Hand-written codec for {@link Customer} and its embedded {@link Address}, reads and writes the same
+ * document shape as the pojo codec (including the {@code _t} discriminator) without reflection.
+ */
+public class CustomerCodec implements CollectibleCodec<Customer> {
+    static final String DISCRIMINATOR_KEY = "_t";
+    static final String DISCRIMINATOR = "customers";
+
+    @Override
+    public void encode(BsonWriter writer, Customer value, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        if (value.getId() != null) {
+            writer.writeObjectId("_id", value.getId());
+        }
+        writer.writeString(DISCRIMINATOR_KEY, DISCRIMINATOR);
+        if (value.getName() != null) {
+            writer.writeString("name", value.getName());
+        }
+        writer.writeInt32("age", value.getAge());
+        if (value.getAddress() != null) {
+            writer.writeName("address");
+            encodeAddress(writer, value.getAddress());
+        }
+        writer.writeEndDocument();
+    }
+
+    private static void encodeAddress(BsonWriter writer, Address address) {
+        writer.writeStartDocument();
+        if (address.getStreet() != null) {
+            writer.writeString("street", address.getStreet());
+        }
+        if (address.getCity() != null) {
+            writer.writeString("city", address.getCity());
+        }
+        if (address.getZip() != null) {
+            writer.writeString("zip", address.getZip());
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Customer decode(BsonReader reader, DecoderContext decoderContext) {
+        var customer = new Customer();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            var name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id" -> customer.setId(reader.readObjectId());
+                case "name" -> customer.setName(reader.readString());
+                case "age" -> customer.setAge(readInt(reader));
+                case "address" -> customer.setAddress(decodeAddress(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return customer;
+    }
+
+    private static Address decodeAddress(BsonReader reader) {
+        var address = new Address();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            var name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "street" -> address.setStreet(reader.readString());
+                case "city" -> address.setCity(reader.readString());
+                case "zip" -> address.setZip(reader.readString());
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return address;
+    }
+
+    // documents written by other clients may store numbers as int64 or double
+    private static int readInt(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT64 -> (int) reader.readInt64();
+            case DOUBLE -> (int) reader.readDouble();
+            default -> reader.readInt32();
+        };
+    }
+
+    @Override
+    public Class<Customer> getEncoderClass() {
+        return Customer.class;
+    }
+
+    @Override
+    public Customer generateIdIfAbsentFromDocument(Customer document) {
+        if (document.getId() == null) {
+            document.setId(new ObjectId());
+        }
+        return document;
+    }
+
+    @Override
+    public boolean documentHasId(Customer document) {
+        return document.getId() != null;
+    }
+
+    @Override
+    public BsonValue getDocumentId(Customer document) {
+        if (document.getId() == null) {
+            throw new IllegalStateException("The customer does not contain an _id");
+        }
+        return new BsonObjectId(document.getId());
+    }
+}
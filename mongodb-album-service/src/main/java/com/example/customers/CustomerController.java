@@ -1,5 +1,8 @@
 package com.example.customers;
 
+import com.example.NdJson;
+import com.example.Pagination;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.MutableHttpResponse;
@@ -7,6 +10,7 @@ import io.micronaut.http.annotation.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -19,10 +23,36 @@ import static io.micronaut.http.HttpResponse.*;
 @Slf4j
 public class CustomerController {
     private final CustomerRepository customerRepository;
+    private final NdJson ndJson;
+    private final CustomerImporter customerImporter;
 
     @Get(uri = "/", produces = {MediaType.APPLICATION_JSON})
-    public Flux<?> all() {
-        return this.customerRepository.findAll();
+    public Flux<?> all(@Nullable @QueryValue ObjectId after, @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        return this.customerRepository.findAll(after, Pagination.pageSize(limit));
+    }
+
+    @Get(uri = "/", produces = {NdJson.MEDIA_TYPE})
+    public Flux<byte[]> stream(@Nullable @QueryValue ObjectId after, @QueryValue(defaultValue = "0") int limit) {
+        return this.ndJson.write(this.customerRepository.findAll(after, Math.max(0, limit)));
+    }
+
+    @Get(uri = "/by-city/{city}", produces = {MediaType.APPLICATION_JSON})
+    public Flux<Customer> byCity(@PathVariable String city,
+                                 @Nullable @QueryValue Integer minAge,
+                                 @Nullable @QueryValue Integer maxAge,
+                                 @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        return this.customerRepository.findByCity(city, minAge, maxAge, Pagination.pageSize(limit));
+    }
+
+    /**
+     * Relevance ranked text search over names and addresses, pass the {@code cursor} of the last match as
+     * {@code after} for the next page.
+     */
+    @Get(uri = "/search", produces = {MediaType.APPLICATION_JSON})
+    public Flux<CustomerMatch> search(@QueryValue String q,
+                                      @Nullable @QueryValue SearchCursor after,
+                                      @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        return this.customerRepository.search(q, after, Pagination.pageSize(limit));
     }
 
     @Get(uri = "/{id}", produces = {MediaType.APPLICATION_JSON})
@@ -38,6 +68,14 @@ public class CustomerController {
                 .map(id -> created(URI.create("/customers/" + id.toHexString())));
     }
 
+    /**
+     * Imports a newline delimited JSON body of customers, streams one result line per inserted batch.
+     */
+    @Post(uri = "/bulk", consumes = {NdJson.MEDIA_TYPE}, produces = {NdJson.MEDIA_TYPE})
+    public Flux<byte[]> bulkImport(@Body Publisher<byte[]> body) {
+        return this.ndJson.write(this.customerImporter.importAll(body));
+    }
+
     @Delete(uri = "/{id}")
     public Mono<HttpResponse<?>> delete(@PathVariable ObjectId id) {
         return this.customerRepository.deleteById(id)
@@ -0,0 +1,15 @@
+package com.example.customers;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * Bulk customer imports, documents are inserted {@code batchSize} at a time with at most {@code concurrency}
+ * batches in flight, so the request body is read only as fast as MongoDB takes the inserts.
+ */
+@ConfigurationProperties("customers.import")
+public record CustomerImportProperties(
+        @Bindable(defaultValue = "1000") int batchSize,
+        @Bindable(defaultValue = "4") int concurrency
+) {
+}
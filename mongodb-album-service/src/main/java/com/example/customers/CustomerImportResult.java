@@ -0,0 +1,15 @@
+package com.example.customers;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Outcome of one import batch, lines are 1-based line numbers of the request body.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record CustomerImportResult(long batch, long firstLine, long lastLine, int inserted, List<Failure> failures) {
+
+    public record Failure(long line, String error) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.customers;
+
+import com.example.NdJson;
+import com.mongodb.MongoBulkWriteException;
+import io.micronaut.json.JsonMapper;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports customers from a newline delimited JSON body, one customer per line. Lines are parsed as they arrive
+ * and inserted in unordered batches, a line that is not a customer or fails to insert is reported in the result
+ * of its batch and does not stop the import.
+ */
+@Singleton
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerImporter {
+    private final CustomerRepository customerRepository;
+    private final JsonMapper jsonMapper;
+    private final NdJson ndJson;
+    private final CustomerImportProperties properties;
+
+    /**
+     * Emits one result per batch, in body order.
+     */
+    public Flux<CustomerImportResult> importAll(Publisher<byte[]> body) {
+        return this.ndJson.lines(body)
+                .index((index, line) -> new Line(index + 1, line))
+                .filter(line -> !line.isBlank())
+                .buffer(properties.batchSize())
+                .index()
+                .flatMapSequential(this::insert, properties.concurrency(), 1);
+    }
+
+    private Mono<CustomerImportResult> insert(Tuple2<Long, List<Line>> batch) {
+        var lines = batch.getT2();
+        List<Customer> customers = new ArrayList<>(lines.size());
+        List<Long> customerLines = new ArrayList<>(lines.size());
+        List<CustomerImportResult.Failure> failures = new ArrayList<>();
+        for (var line : lines) {
+            try {
+                customers.add(jsonMapper.readValue(line.content(), Customer.class));
+                customerLines.add(line.number());
+            } catch (IOException e) {
+                failures.add(new CustomerImportResult.Failure(line.number(), e.getMessage()));
+            }
+        }
+        long firstLine = lines.getFirst().number();
+        long lastLine = lines.getLast().number();
+        if (customers.isEmpty()) {
+            return Mono.just(new CustomerImportResult(batch.getT1(), firstLine, lastLine, 0, failures));
+        }
+        return this.customerRepository.insertUnordered(customers)
+                .onErrorResume(MongoBulkWriteException.class, e -> {
+                    e.getWriteErrors().forEach(error ->
+                            failures.add(new CustomerImportResult.Failure(customerLines.get(error.getIndex()), error.getMessage())));
+                    return Mono.just(customers.size() - e.getWriteErrors().size());
+                })
+                .onErrorResume(e -> {
+                    log.warn("failed to insert customers of lines {} to {}: {}", firstLine, lastLine, e.getMessage());
+                    customerLines.forEach(line -> failures.add(new CustomerImportResult.Failure(line, e.getMessage())));
+                    return Mono.just(0);
+                })
+                .map(inserted -> {
+                    failures.sort((a, b) -> Long.compare(a.line(), b.line()));
+                    return new CustomerImportResult(batch.getT1(), firstLine, lastLine, inserted, failures);
+                });
+    }
+
+    private record Line(long number, byte[] content) {
+
+        boolean isBlank() {
+            for (byte b : content) {
+                if (!Character.isWhitespace(b)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.customers;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.Optional;
+
+/**
+ * A customer found by a text search, without the fields the search results do not show. {@code cursor} is passed
+ * as {@code after} to get the matches ranked below this one.
+ */
+public record CustomerMatch(ObjectId id, String name, Address address, double score, String cursor) {
+
+    static CustomerMatch of(Document document) {
+        var id = document.getObjectId("_id");
+        var score = document.getDouble(CustomerRepository.SCORE);
+        var address = Optional.ofNullable(document.get("address", Document.class))
+                .map(a -> Address.of(a.getString("street"), a.getString("city"), a.getString("zip")))
+                .orElse(null);
+        return new CustomerMatch(id, document.getString("name"), address, score, new SearchCursor(score, id).toString());
+    }
+}
@@ -1,42 +1,100 @@
 package com.example.customers;
 
 
+import com.example.MongoCollections;
+import com.example.Pagination;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.DeleteOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.InsertOneOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
-import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoCollection;
-import io.micronaut.configuration.mongo.core.DefaultMongoConfiguration;
+import io.micronaut.core.annotation.Nullable;
 import jakarta.inject.Singleton;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.BsonValue;
-import org.bson.codecs.pojo.Conventions;
-import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
-import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
-
 @Singleton
 @RequiredArgsConstructor
 @Slf4j
 public class CustomerRepository {
-    private final MongoClient mongoClient;
-    private final DefaultMongoConfiguration mongoConfiguration;
+    static final String SCORE = "score";
+
+    private final MongoCollections mongoCollections;
 
     public Flux<Customer> findAll() {
         return Flux.from(customersCollection().find());
     }
 
+    public Flux<Customer> findAll(@Nullable ObjectId after, int limit) {
+        return Flux.from(customersCollection().find(Pagination.after(after))
+                .sort(Sorts.ascending("_id"))
+                .limit(limit)
+                .batchSize(Pagination.batchSize(limit)));
+    }
+
+    /**
+     * Customers living in the city, optionally within an age range, youngest first.
+     */
+    public Flux<Customer> findByCity(String city, @Nullable Integer minAge, @Nullable Integer maxAge, int limit) {
+        var filters = new ArrayList<Bson>();
+        filters.add(Filters.eq("address.city", city));
+        if (minAge != null) {
+            filters.add(Filters.gte("age", minAge));
+        }
+        if (maxAge != null) {
+            filters.add(Filters.lte("age", maxAge));
+        }
+        return Flux.from(customersCollection().find(Filters.and(filters))
+                .sort(Sorts.ascending("age"))
+                .limit(limit)
+                .batchSize(Pagination.batchSize(limit)));
+    }
+
+    /**
+     * Customers matching the words of {@code text} in their name or address through the text index, most relevant
+     * first. Only the fields of {@link CustomerMatch} are read.
+     */
+    public Flux<CustomerMatch> search(String text, @Nullable SearchCursor after, int limit) {
+        return Flux.from(mongoCollections.get("userdb", "customers", Document.class)
+                        .aggregate(searchPipeline(text, after, limit))
+                        .batchSize(Pagination.batchSize(limit)))
+                .map(CustomerMatch::of);
+    }
+
+    /**
+     * The pipeline of {@link #search}, public so its plan can be checked against the indexes.
+     */
+    public static List<Bson> searchPipeline(String text, @Nullable SearchCursor after, int limit) {
+        var pipeline = new ArrayList<Bson>();
+        pipeline.add(Aggregates.match(Filters.text(text)));
+        pipeline.add(Aggregates.project(Projections.fields(
+                Projections.include("name", "address"),
+                Projections.metaTextScore(SCORE))));
+        if (after != null) {
+            pipeline.add(Aggregates.match(Filters.or(
+                    Filters.lt(SCORE, after.score()),
+                    Filters.and(Filters.eq(SCORE, after.score()), Filters.gt("_id", after.id())))));
+        }
+        pipeline.add(Aggregates.sort(Sorts.orderBy(Sorts.descending(SCORE), Sorts.ascending("_id"))));
+        pipeline.add(Aggregates.limit(limit));
+        return pipeline;
+    }
+
     public Mono<Customer> findById(ObjectId id) {
         return Mono.from(customersCollection().find(Filters.eq(id)));
     }
@@ -51,6 +109,15 @@ public class CustomerRepository {
                 .map(InsertManyResult::getInsertedIds);
     }
 
+    /**
+     * Inserts without stopping at the first failing document, emits the number inserted. Documents that failed
+     * are reported through the {@link com.mongodb.MongoBulkWriteException}, the others are inserted regardless.
+     */
+    public Mono<Integer> insertUnordered(List<Customer> data) {
+        return Mono.from(customersCollection().insertMany(data, new InsertManyOptions().bypassDocumentValidation(false).ordered(false)))
+                .map(result -> result.getInsertedIds().size());
+    }
+
     public Mono<Long> deleteById(ObjectId id) {
         return Mono.from(customersCollection().deleteOne(Filters.eq(id), new DeleteOptions()))
                 .map(DeleteResult::getDeletedCount);
@@ -78,17 +145,7 @@ public class CustomerRepository {
     }
 
     private MongoCollection<Customer> customersCollection() {
-        var providers = fromProviders(
-                mongoConfiguration.getClientSettings().build().getCodecRegistry(),
-                PojoCodecProvider.builder()
-                        .register("com.example.customers")
-                        .conventions(Conventions.DEFAULT_CONVENTIONS)
-                        .build());
-        var codecRegistry = fromRegistries(List.of(providers));
-        return mongoClient
-                .getDatabase("userdb")
-                .getCollection("customers", Customer.class)
-                .withCodecRegistry(codecRegistry);
+        return mongoCollections.get("userdb", "customers", Customer.class);
     }
 
 }
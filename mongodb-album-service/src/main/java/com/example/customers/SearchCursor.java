@@ -0,0 +1,22 @@
+package com.example.customers;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Position in a relevance ranked result: matches rank by descending score, ties by ascending id.
+ */
+public record SearchCursor(double score, ObjectId id) {
+
+    public static SearchCursor parse(String value) {
+        var separator = value.lastIndexOf('_');
+        if (separator < 0) {
+            throw new IllegalArgumentException("invalid search cursor: " + value);
+        }
+        return new SearchCursor(Double.parseDouble(value.substring(0, separator)), new ObjectId(value.substring(separator + 1)));
+    }
+
+    @Override
+    public String toString() {
+        return score + "_" + id.toHexString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.customers;
+
+import io.micronaut.core.convert.ConversionContext;
+import io.micronaut.core.convert.TypeConverter;
+import jakarta.inject.Singleton;
+
+import java.util.Optional;
+
+@Singleton
+public class StringToSearchCursorConverter implements TypeConverter<String, SearchCursor> {
+
+    @Override
+    public Optional<SearchCursor> convert(String object, Class<SearchCursor> targetType, ConversionContext context) {
+        try {
+            return Optional.of(SearchCursor.parse(object));
+        } catch (IllegalArgumentException e) {
+            context.reject(object, e);
+            return Optional.empty();
+        }
+    }
+}
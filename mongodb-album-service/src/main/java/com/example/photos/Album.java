@@ -31,16 +31,6 @@ public class Album {
     @Builder.Default
     private List<String> photos = new ArrayList<>();
 
-    public synchronized void addPhoto(String photoId) {
-        if (!photos.contains(photoId)) {
-            this.photos.add(photoId);
-        }
-    }
-
-    public void removePhoto(String photoId) {
-        this.photos.removeIf(e -> e.equals(photoId));
-    }
-
     public static Album of(String name) {
         var album = new Album();
         album.setName(name);
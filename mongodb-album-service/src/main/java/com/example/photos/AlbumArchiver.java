@@ -0,0 +1,50 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streams the photos of an album as a ZIP archive of STORED entries, photos are compressed already. Photos
+ * are read one at a time, in album order, and their buffers passed through as the client takes them, so
+ * memory stays bounded by the read-ahead of a single photo however large the album. Only the central
+ * directory, a few dozen bytes per photo, is kept until the end.
+ */
+@Singleton
+@RequiredArgsConstructor
+public class AlbumArchiver {
+    /**
+     * The CRC-32 of the content, recorded at upload so the archive headers can carry it up front.
+     */
+    public static final String CRC32 = "crc32";
+
+    private final PhotoInfoResolver photoInfoResolver;
+    private final PhotoStores photoStores;
+
+    public Flux<ByteBuffer> archive(Album album) {
+        return Flux.defer(() -> {
+            var zip = new ZipStream();
+            return this.photoInfoResolver.resolveFiles(album.getPhotos())
+                    .concatMap(file -> Flux.concat(
+                            Mono.fromSupplier(() -> zip.startEntry(
+                                    file.getFilename() == null ? file.getObjectId().toHexString() : file.getFilename(),
+                                    file.getObjectId().toHexString(),
+                                    file.getLength(),
+                                    file.getUploadDate(),
+                                    crc32(file))),
+                            this.photoStores.forFile(file).read(file, ByteRange.full(file.getLength())).map(zip::data),
+                            Mono.fromSupplier(zip::endEntry).filter(ByteBuffer::hasRemaining)
+                    ), 1)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(zip.centralDirectory())));
+        });
+    }
+
+    private static Long crc32(GridFSFile file) {
+        var metadata = file.getMetadata();
+        return metadata == null || !(metadata.get(CRC32) instanceof Number crc) ? null : crc.longValue();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.photos;
+
+import org.bson.BsonObjectId;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.BsonWriter;
+import org.bson.codecs.CollectibleCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written codec for {@link Album}, reads and writes the same document shape as the pojo codec
+ * (including the {@code _t} discriminator) without reflection or intermediate property maps.
+ */
+public class AlbumCodec implements CollectibleCodec<Album> {
+    static final String DISCRIMINATOR_KEY = "_t";
+    static final String DISCRIMINATOR = "albums";
+
+    @Override
+    public void encode(BsonWriter writer, Album value, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        if (value.getId() != null) {
+            writer.writeObjectId("_id", value.getId());
+        }
+        writer.writeString(DISCRIMINATOR_KEY, DISCRIMINATOR);
+        if (value.getName() != null) {
+            writer.writeString("name", value.getName());
+        }
+        if (value.getCreatedAt() != null) {
+            writer.writeDateTime("createdAt", value.getCreatedAt().toEpochMilli());
+        }
+        if (value.getPhotos() != null) {
+            writer.writeStartArray("photos");
+            for (String photo : value.getPhotos()) {
+                if (photo == null) {
+                    writer.writeNull();
+                } else {
+                    writer.writeString(photo);
+                }
+            }
+            writer.writeEndArray();
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Album decode(BsonReader reader, DecoderContext decoderContext) {
+        var album = new Album();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            var name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (name) {
+                case "_id" -> album.setId(reader.readObjectId());
+                case "name" -> album.setName(reader.readString());
+                case "createdAt" -> album.setCreatedAt(Instant.ofEpochMilli(reader.readDateTime()));
+                case "photos" -> album.setPhotos(readPhotos(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return album;
+    }
+
+    private static List<String> readPhotos(BsonReader reader) {
+        var photos = new ArrayList<String>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                photos.add(null);
+            } else {
+                photos.add(reader.readString());
+            }
+        }
+        reader.readEndArray();
+        return photos;
+    }
+
+    @Override
+    public Class<Album> getEncoderClass() {
+        return Album.class;
+    }
+
+    @Override
+    public Album generateIdIfAbsentFromDocument(Album document) {
+        if (document.getId() == null) {
+            document.setId(new ObjectId());
+        }
+        return document;
+    }
+
+    @Override
+    public boolean documentHasId(Album document) {
+        return document.getId() != null;
+    }
+
+    @Override
+    public BsonValue getDocumentId(Album document) {
+        if (document.getId() == null) {
+            throw new IllegalStateException("The album does not contain an _id");
+        }
+        return new BsonObjectId(document.getId());
+    }
+}
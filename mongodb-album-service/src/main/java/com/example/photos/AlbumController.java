@@ -1,6 +1,11 @@
 package com.example.photos;
 
+import com.example.NdJson;
+import com.example.Pagination;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.*;
@@ -12,6 +17,7 @@ import reactor.core.publisher.Mono;
 
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Map;
 
 import static io.micronaut.http.HttpResponse.*;
 
@@ -20,16 +26,105 @@ import static io.micronaut.http.HttpResponse.*;
 @Slf4j
 public class AlbumController {
     private final AlbumRepository albumRepository;
+    private final NdJson ndJson;
+    private final PhotoInfoResolver photoInfoResolver;
+    private final StorageStatsService storageStats;
+    private final AlbumReferenceSweeper referenceSweeper;
+    private final AlbumArchiver albumArchiver;
+    private final AlbumDeletionJobs deletionJobs;
 
     @Get(uri = "/", produces = {MediaType.APPLICATION_JSON})
-    public Flux<?> all() {
-        return this.albumRepository.findAll();
+    public Flux<AlbumSummary> all(@Nullable @QueryValue ObjectId after, @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        return this.albumRepository.findSummaries(after, Pagination.pageSize(limit));
+    }
+
+    @Get(uri = "/", produces = {NdJson.MEDIA_TYPE})
+    public Flux<byte[]> stream(@Nullable @QueryValue ObjectId after, @QueryValue(defaultValue = "0") int limit) {
+        return this.ndJson.write(this.albumRepository.findSummaries(after, Math.max(0, limit)));
+    }
+
+    @Get(uri = "/by-name/{name}", produces = {MediaType.APPLICATION_JSON})
+    public Flux<AlbumSummary> byName(@PathVariable String name, @Nullable @QueryValue ObjectId after, @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        return this.albumRepository.findByName(name, after, Pagination.pageSize(limit));
+    }
+
+    @Get(uri = "/containing/{photoId}", produces = {MediaType.APPLICATION_JSON})
+    public Flux<AlbumSummary> containing(@PathVariable String photoId, @Nullable @QueryValue ObjectId after, @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        return this.albumRepository.findByPhoto(photoId, after, Pagination.pageSize(limit));
+    }
+
+    @Get(uri = "/sweep", produces = {MediaType.APPLICATION_JSON})
+    public AlbumReferenceSweeper.Progress sweepProgress() {
+        return this.referenceSweeper.progress();
+    }
+
+    /**
+     * Starts a sweep of dangling photo ids in the background, 409 if one is running.
+     */
+    @Post(uri = "/sweep")
+    public HttpResponse<?> sweep() {
+        if (this.referenceSweeper.progress().running()) {
+            return status(HttpStatus.CONFLICT);
+        }
+        this.referenceSweeper.sweep().subscribe(
+                removed -> log.debug("album reference sweep removed {} dangling photo ids", removed),
+                error -> log.warn("album reference sweep failed: {}", error.getMessage()));
+        return accepted();
     }
 
     @Get(uri = "/{id}", produces = {MediaType.APPLICATION_JSON})
-    public Mono<MutableHttpResponse<Album>> byId(@PathVariable ObjectId id) {
+    public Mono<MutableHttpResponse<?>> byId(@PathVariable ObjectId id, @Nullable @QueryValue String expand) {
+        var album = this.albumRepository.findById(id);
+        if ("photos".equals(expand)) {
+            return album
+                    .flatMap(found -> this.photoInfoResolver.resolve(found.getPhotos())
+                            .collectList()
+                            .map(photos -> AlbumWithPhotos.of(found, photos)))
+                    .<MutableHttpResponse<?>>map(HttpResponse::ok)
+                    .switchIfEmpty(Mono.just(notFound()));
+        }
+        return album
+                .<MutableHttpResponse<?>>map(HttpResponse::ok)
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    @Get(uri = "/{id}/photos", produces = {MediaType.APPLICATION_JSON})
+    public Mono<MutableHttpResponse<?>> photos(@PathVariable ObjectId id) {
+        return this.albumRepository.findById(id)
+                .<MutableHttpResponse<?>>map(album -> ok(this.photoInfoResolver.resolve(album.getPhotos()))
+                        .contentType(MediaType.APPLICATION_JSON))
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    @Get(uri = "/{id}/photos", produces = {NdJson.MEDIA_TYPE})
+    public Mono<MutableHttpResponse<?>> streamPhotos(@PathVariable ObjectId id) {
+        return this.albumRepository.findById(id)
+                .<MutableHttpResponse<?>>map(album -> ok(this.ndJson.write(this.photoInfoResolver.resolve(album.getPhotos())))
+                        .contentType(NdJson.MEDIA_TYPE))
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    /**
+     * Downloads all photos of the album as one ZIP archive, built while it is sent.
+     */
+    @Get(uri = "/{id}/archive", produces = {"application/zip"})
+    public Mono<MutableHttpResponse<?>> archive(@PathVariable ObjectId id) {
         return this.albumRepository.findById(id)
-                .map(HttpResponse::ok)
+                .<MutableHttpResponse<?>>map(album -> ok(this.albumArchiver.archive(album))
+                        .contentType("application/zip")
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archiveName(album) + "\""))
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    private static String archiveName(Album album) {
+        var name = album.getName() == null ? album.getId().toHexString() : album.getName();
+        return name.replaceAll("[^A-Za-z0-9._-]", "_") + ".zip";
+    }
+
+    @Get(uri = "/{id}/stats", produces = {MediaType.APPLICATION_JSON})
+    public Mono<MutableHttpResponse<?>> stats(@PathVariable ObjectId id) {
+        return this.storageStats.album(id)
+                .<MutableHttpResponse<?>>map(HttpResponse::ok)
                 .switchIfEmpty(Mono.just(notFound()));
     }
 
@@ -40,30 +135,34 @@ public class AlbumController {
     }
 
     @Post(uri = "/{id}/photos", consumes = {MediaType.APPLICATION_JSON})
-    public Mono<MutableHttpResponse<Object>> addPhotosToAlbum(@PathVariable ObjectId id, @Body AddPhotoToAlbumDto data) {
-        return this.albumRepository.findById(id)
-                .flatMap(album -> {
-                    Arrays.stream(data.photoIds()).forEach(album::addPhoto);
-                    return this.albumRepository.update(id, album);
-                })
-                .map(r -> HttpResponse.noContent())
+    public Mono<MutableHttpResponse<?>> addPhotosToAlbum(@PathVariable ObjectId id, @Body AddPhotoToAlbumDto data) {
+        return this.albumRepository.addPhotos(id, Arrays.asList(data.photoIds()))
+                .doOnNext(modified -> this.storageStats.albumChanged(id))
+                .<MutableHttpResponse<?>>map(modified -> ok(Map.of("modified", modified)))
                 .switchIfEmpty(Mono.just(notFound()));
     }
 
     @Delete(uri = "/{id}/photos", consumes = {MediaType.APPLICATION_JSON})
-    public Mono<MutableHttpResponse<Object>> removePhotosToAlbum(@PathVariable ObjectId id, @Body RemovePhotoFromAlbumDto data) {
-        return this.albumRepository.findById(id)
-                .flatMap(album -> {
-                    Arrays.stream(data.photoIds()).forEach(album::removePhoto);
-                    return this.albumRepository.update(id, album);
-                })
-                .map(r -> HttpResponse.noContent())
+    public Mono<MutableHttpResponse<?>> removePhotosToAlbum(@PathVariable ObjectId id, @Body RemovePhotoFromAlbumDto data) {
+        return this.albumRepository.removePhotos(id, Arrays.asList(data.photoIds()))
+                .doOnNext(modified -> this.storageStats.albumChanged(id))
+                .<MutableHttpResponse<?>>map(modified -> ok(Map.of("modified", modified)))
                 .switchIfEmpty(Mono.just(notFound()));
     }
 
+    /**
+     * With {@code cascade=true} the photos no other album references are deleted as well, in the background,
+     * and the response points to the job progress.
+     */
     @Delete(uri = "/{id}")
-    public Mono<HttpResponse<?>> delete(@PathVariable ObjectId id) {
+    public Mono<HttpResponse<?>> delete(@PathVariable ObjectId id, @QueryValue(defaultValue = "false") boolean cascade) {
+        if (cascade) {
+            return this.deletionJobs.start(id)
+                    .<HttpResponse<?>>map(job -> accepted(URI.create("/albums/jobs/" + job.id())).body(job))
+                    .defaultIfEmpty(notFound());
+        }
         return this.albumRepository.deleteById(id)
+                .doOnNext(deleted -> this.storageStats.albumChanged(id))
                 .map(deleted -> {
                     if (deleted > 0) {
                         return noContent();
@@ -72,4 +171,11 @@ public class AlbumController {
                     }
                 });
     }
+
+    @Get(uri = "/jobs/{jobId}", produces = {MediaType.APPLICATION_JSON})
+    public Mono<MutableHttpResponse<?>> deletionJob(@PathVariable ObjectId jobId) {
+        return this.deletionJobs.find(jobId)
+                .<MutableHttpResponse<?>>map(HttpResponse::ok)
+                .defaultIfEmpty(notFound());
+    }
 }
@@ -0,0 +1,164 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Deletes an album together with the photos no other album references, in the background. The album document
+ * goes first, then its photos are checked in batches against the multikey index on {@code albums.photos} and the
+ * unreferenced ones deleted with at most {@code albums.cascade.concurrency} in flight. A photo added to another
+ * album while the job runs may still be deleted, the reference sweeper removes such ids later.
+ */
+@Singleton
+@RequiredArgsConstructor
+@Slf4j
+public class AlbumDeletionJobs {
+    public enum Status {RUNNING, COMPLETED, FAILED}
+
+    /**
+     * {@code kept} photos are still referenced by another album or share their content with another photo,
+     * {@code missing} ones were not stored (anymore).
+     */
+    public record Progress(String id, String albumId, Status status, int photos, long checked, long deleted,
+                           long kept, long missing, long failed, Instant startedAt, Instant finishedAt, String error) {
+    }
+
+    private final AlbumRepository albumRepository;
+    private final MongoCollections mongoCollections;
+    private final PhotoDeletion photoDeletion;
+    private final StorageStatsService storageStats;
+    private final CascadeProperties properties;
+    private final Map<ObjectId, Job> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Deletes the album and starts removing its photos, emits the job, empty if the album does not exist.
+     */
+    public Mono<Progress> start(ObjectId albumId) {
+        purgeFinished();
+        return this.albumRepository.findById(albumId)
+                .flatMap(album -> this.albumRepository.deleteById(albumId)
+                        .filter(deleted -> deleted > 0)
+                        .map(deleted -> {
+                            this.storageStats.albumChanged(albumId);
+                            var photos = album.getPhotos() == null
+                                    ? List.<String>of()
+                                    : album.getPhotos().stream().filter(Objects::nonNull).toList();
+                            var job = new Job(new ObjectId(), albumId, photos.size());
+                            jobs.put(job.id, job);
+                            run(job, photos);
+                            return job.progress();
+                        }));
+    }
+
+    public Mono<Progress> find(ObjectId jobId) {
+        return Mono.justOrEmpty(jobs.get(jobId)).map(Job::progress);
+    }
+
+    private void run(Job job, List<String> photos) {
+        Flux.fromIterable(photos)
+                .buffer(properties.batchSize())
+                .concatMap(batch -> referenced(batch)
+                        .flatMapMany(referenced -> {
+                            job.checked.addAndGet(batch.size());
+                            job.kept.addAndGet(referenced.size());
+                            return Flux.fromIterable(batch).filter(photo -> !referenced.contains(photo));
+                        }))
+                .flatMap(photo -> delete(job, photo), properties.concurrency())
+                .then()
+                .subscribe(
+                        null,
+                        error -> {
+                            log.warn("deleting the photos of album {} failed: {}", job.albumId, error.getMessage());
+                            job.finish(Status.FAILED, error.getMessage());
+                        },
+                        () -> {
+                            log.debug("deleted {} photos of album {}", job.deleted.get(), job.albumId);
+                            job.finish(Status.COMPLETED, null);
+                        });
+    }
+
+    // photos of the batch that some album still references, only the matching ids leave the server
+    private Mono<Set<String>> referenced(List<String> photos) {
+        return Flux.from(this.mongoCollections.get("photos", "albums", Document.class)
+                        .aggregate(List.of(
+                                Aggregates.match(Filters.in("photos", photos)),
+                                Aggregates.project(Projections.fields(Projections.include("photos"), Projections.excludeId())),
+                                Aggregates.unwind("$photos"),
+                                Aggregates.match(Filters.in("photos", photos)),
+                                Aggregates.group("$photos"))))
+                .map(photo -> photo.getString("_id"))
+                .collect(HashSet::new, Set::add);
+    }
+
+    private Mono<Void> delete(Job job, String photo) {
+        if (!ObjectId.isValid(photo)) {
+            job.missing.incrementAndGet();
+            return Mono.empty();
+        }
+        return this.photoDeletion.delete(new ObjectId(photo))
+                .doOnNext(removed -> (removed ? job.deleted : job.kept).incrementAndGet())
+                .switchIfEmpty(Mono.fromRunnable(job.missing::incrementAndGet))
+                .onErrorResume(error -> {
+                    log.warn("failed to delete photo {} of album {}: {}", photo, job.albumId, error.getMessage());
+                    job.failed.incrementAndGet();
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private void purgeFinished() {
+        var cutoff = Instant.now().minus(properties.retention());
+        jobs.values().removeIf(job -> job.finishedAt.get() != null && job.finishedAt.get().isBefore(cutoff));
+    }
+
+    private static final class Job {
+        final ObjectId id;
+        final ObjectId albumId;
+        final int photos;
+        final Instant startedAt = Instant.now();
+        final AtomicLong checked = new AtomicLong();
+        final AtomicLong deleted = new AtomicLong();
+        final AtomicLong kept = new AtomicLong();
+        final AtomicLong missing = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicReference<Status> status = new AtomicReference<>(Status.RUNNING);
+        final AtomicReference<Instant> finishedAt = new AtomicReference<>();
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        Job(ObjectId id, ObjectId albumId, int photos) {
+            this.id = id;
+            this.albumId = albumId;
+            this.photos = photos;
+        }
+
+        void finish(Status result, String message) {
+            error.set(message);
+            finishedAt.set(Instant.now());
+            status.set(result);
+        }
+
+        Progress progress() {
+            return new Progress(id.toHexString(), albumId.toHexString(), status.get(), photos,
+                    checked.get(), deleted.get(), kept.get(), missing.get(), failed.get(), startedAt, finishedAt.get(), error.get());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.example.Pagination;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Removes ids of deleted photos from albums. Albums are read in {@code _id} pages of {@code batchSize}, the
+ * photo ids of a page are checked against {@code fs.files} with one {@code $in} query per
+ * {@link PhotoInfoResolver#IN_CHUNK} ids, a page of large albums can hold more ids than one query document fits,
+ * and the dangling ones pulled with one bulk write of {@code $pullAll} updates. Pages are read only once the previous
+ * one is reconciled, so only one page is held in memory at a time. Pages are spaced to stay below
+ * {@code albumsPerSecond}.
+ * <p>
+ * Only ids that are valid object ids are checked, anything else, nulls included, was never a stored photo and is
+ * left alone.
+ */
+@Singleton
+@Slf4j
+public class AlbumReferenceSweeper {
+    private final MongoCollections mongoCollections;
+    private final StorageStatsService storageStats;
+    private final SweeperProperties properties;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong albumsScanned = new AtomicLong();
+    private final AtomicLong referencesChecked = new AtomicLong();
+    private final AtomicLong referencesRemoved = new AtomicLong();
+    private final AtomicLong albumsUpdated = new AtomicLong();
+    private final AtomicReference<Instant> lastStarted = new AtomicReference<>();
+    private final AtomicReference<Instant> lastCompleted = new AtomicReference<>();
+
+    public AlbumReferenceSweeper(MongoCollections mongoCollections, StorageStatsService storageStats, SweeperProperties properties) {
+        this.mongoCollections = mongoCollections;
+        this.storageStats = storageStats;
+        this.properties = properties;
+    }
+
+    public record Progress(boolean running, Instant lastStarted, Instant lastCompleted,
+                           long albumsScanned, long referencesChecked, long referencesRemoved, long albumsUpdated) {
+    }
+
+    @Scheduled(initialDelay = "10m", fixedDelay = "${photos.sweeper.interval:1h}")
+    void run() {
+        if (properties.enabled()) {
+            var removed = sweep().block();
+            log.debug("album reference sweep removed {} dangling photo ids", removed);
+        }
+    }
+
+    /**
+     * Runs a sweep and emits the number of references removed, completes empty if a sweep is already running.
+     */
+    public Mono<Long> sweep() {
+        return Mono.defer(() -> {
+            if (!running.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            albumsScanned.set(0);
+            referencesChecked.set(0);
+            referencesRemoved.set(0);
+            albumsUpdated.set(0);
+            lastStarted.set(Instant.now());
+            var pause = Duration.ofMillis(1000L * properties.batchSize() / Math.max(1, properties.albumsPerSecond()));
+            return page(null)
+                    .expand(albums -> albums.size() < properties.batchSize()
+                            ? Mono.empty()
+                            : page(albums.getLast().getObjectId("_id")).delaySubscription(pause))
+                    // no prefetch, the next page is read once this one is reconciled
+                    .concatMap(this::reconcile, 0)
+                    .reduce(0L, Long::sum)
+                    .doOnSuccess(removed -> lastCompleted.set(Instant.now()))
+                    .doFinally(signal -> running.set(false));
+        });
+    }
+
+    public Progress progress() {
+        return new Progress(running.get(), lastStarted.get(), lastCompleted.get(),
+                albumsScanned.get(), referencesChecked.get(), referencesRemoved.get(), albumsUpdated.get());
+    }
+
+    private Mono<List<Document>> page(ObjectId after) {
+        return Flux.from(albumsCollection().find(Pagination.after(after))
+                        .projection(Projections.include("photos"))
+                        .sort(Sorts.ascending("_id"))
+                        .limit(properties.batchSize())
+                        .batchSize(properties.batchSize()))
+                .collectList()
+                .filter(albums -> !albums.isEmpty());
+    }
+
+    private Mono<Long> reconcile(List<Document> albums) {
+        albumsScanned.addAndGet(albums.size());
+        Set<ObjectId> referenced = new HashSet<>();
+        for (var album : albums) {
+            for (var photo : album.getList("photos", String.class, List.of())) {
+                if (photo != null && ObjectId.isValid(photo)) {
+                    referenced.add(new ObjectId(photo));
+                }
+            }
+        }
+        if (referenced.isEmpty()) {
+            return Mono.just(0L);
+        }
+        referencesChecked.addAndGet(referenced.size());
+        return Flux.fromIterable(referenced)
+                .buffer(PhotoInfoResolver.IN_CHUNK)
+                .concatMap(ids -> Flux.from(filesCollection().find(Filters.in("_id", ids))
+                        .projection(Projections.include("_id"))
+                        .batchSize(ids.size())))
+                .map(file -> file.getObjectId("_id").toHexString())
+                .collect(HashSet<String>::new, Set::add)
+                .flatMap(existing -> pull(albums, existing));
+    }
+
+    private Mono<Long> pull(List<Document> albums, Set<String> existing) {
+        List<UpdateOneModel<Document>> updates = new ArrayList<>();
+        List<ObjectId> updated = new ArrayList<>();
+        long dangling = 0;
+        for (var album : albums) {
+            var missing = album.getList("photos", String.class, List.of()).stream()
+                    .filter(photo -> photo != null && ObjectId.isValid(photo) && !existing.contains(photo))
+                    .distinct()
+                    .toList();
+            if (!missing.isEmpty()) {
+                var id = album.getObjectId("_id");
+                updates.add(new UpdateOneModel<>(Filters.eq("_id", id), Updates.pullAll("photos", missing)));
+                updated.add(id);
+                dangling += missing.size();
+            }
+        }
+        if (updates.isEmpty()) {
+            return Mono.just(0L);
+        }
+        long removed = dangling;
+        return Mono.from(albumsCollection().bulkWrite(updates))
+                .doOnNext(result -> {
+                    referencesRemoved.addAndGet(removed);
+                    albumsUpdated.addAndGet(result.getModifiedCount());
+                    updated.forEach(storageStats::albumChanged);
+                })
+                .thenReturn(removed);
+    }
+
+    private MongoCollection<Document> albumsCollection() {
+        return mongoCollections.get("photos", "albums", Document.class);
+    }
+
+    private MongoCollection<Document> filesCollection() {
+        return mongoCollections.get("photos", "fs.files", Document.class);
+    }
+}
@@ -1,19 +1,20 @@
 package com.example.photos;
 
 
+import com.example.MongoCollections;
+import com.example.Pagination;
 import com.mongodb.client.model.*;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.client.result.UpdateResult;
-import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoCollection;
-import io.micronaut.configuration.mongo.core.DefaultMongoConfiguration;
+import io.micronaut.core.annotation.Nullable;
 import jakarta.inject.Singleton;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.BsonValue;
-import org.bson.codecs.pojo.Conventions;
-import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -21,20 +22,55 @@ import reactor.core.publisher.Mono;
 import java.util.List;
 import java.util.Map;
 
-import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
-import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
-
 @Singleton
 @RequiredArgsConstructor
 @Slf4j
 public class AlbumRepository {
-    private final MongoClient mongoClient;
-    private final DefaultMongoConfiguration mongoConfiguration;
+    private static final Bson SUMMARY = Projections.fields(
+            Projections.include("name", "createdAt"),
+            Projections.computed("photoCount", new Document("$size", new Document("$ifNull", List.of("$photos", List.of()))))
+    );
+
+    private final MongoCollections mongoCollections;
 
     public Flux<Album> findAll() {
         return Flux.from(albumsCollection().find());
     }
 
+    public Flux<Album> findAll(@Nullable ObjectId after, int limit) {
+        return Flux.from(albumsCollection().find(Pagination.after(after))
+                .sort(Sorts.ascending("_id"))
+                .limit(limit)
+                .batchSize(Pagination.batchSize(limit)));
+    }
+
+    /**
+     * Album summaries, the photo ids are counted by the server with {@code $size} and never sent.
+     */
+    public Flux<AlbumSummary> findSummaries(@Nullable ObjectId after, int limit) {
+        return findSummaries(Pagination.after(after), limit);
+    }
+
+    public Flux<AlbumSummary> findByName(String name, @Nullable ObjectId after, int limit) {
+        return findSummaries(Filters.and(Filters.eq("name", name), Pagination.after(after)), limit);
+    }
+
+    /**
+     * Albums containing the photo, served by the multikey index on {@code photos}.
+     */
+    public Flux<AlbumSummary> findByPhoto(String photoId, @Nullable ObjectId after, int limit) {
+        return findSummaries(Filters.and(Filters.eq("photos", photoId), Pagination.after(after)), limit);
+    }
+
+    private Flux<AlbumSummary> findSummaries(Bson filter, int limit) {
+        return Flux.from(mongoCollections.get("photos", "albums", Document.class).find(filter)
+                        .projection(SUMMARY)
+                        .sort(Sorts.ascending("_id"))
+                        .limit(limit)
+                        .batchSize(Pagination.batchSize(limit)))
+                .map(AlbumSummary::of);
+    }
+
     public Mono<Album> findById(ObjectId id) {
         return Mono.from(albumsCollection().find(Filters.eq(id)));
     }
@@ -49,11 +85,40 @@ public class AlbumRepository {
                 .mapNotNull(UpdateResult::getModifiedCount);
     }
 
+    /**
+     * Adds the photos with a single server-side {@code $addToSet}/{@code $each}, emits the modified count,
+     * or completes empty if no album matches the id.
+     */
+    public Mono<Long> addPhotos(ObjectId id, List<String> photoIds) {
+        return Mono.from(albumsCollection().updateOne(Filters.eq(id), Updates.addEachToSet("photos", photoIds)))
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(UpdateResult::getModifiedCount);
+    }
+
+    /**
+     * Removes the photos with a single server-side {@code $pull}/{@code $in}, emits the modified count,
+     * or completes empty if no album matches the id.
+     */
+    public Mono<Long> removePhotos(ObjectId id, List<String> photoIds) {
+        return Mono.from(albumsCollection().updateOne(Filters.eq(id), Updates.pull("photos", new Document("$in", photoIds))))
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(UpdateResult::getModifiedCount);
+    }
+
     public Mono<Map<Integer, BsonValue>> insertMany(List<Album> data) {
         return Mono.from(albumsCollection().insertMany(data, new InsertManyOptions().bypassDocumentValidation(false).ordered(true)))
                 .map(InsertManyResult::getInsertedIds);
     }
 
+    /**
+     * Inserts without stopping at the first failing document, emits the number inserted. Documents that failed
+     * are reported through the {@link com.mongodb.MongoBulkWriteException}, the others are inserted regardless.
+     */
+    public Mono<Integer> insertUnordered(List<Album> data) {
+        return Mono.from(albumsCollection().insertMany(data, new InsertManyOptions().bypassDocumentValidation(false).ordered(false)))
+                .map(result -> result.getInsertedIds().size());
+    }
+
     public Mono<Long> deleteById(ObjectId id) {
         return Mono.from(albumsCollection().deleteOne(Filters.eq(id), new DeleteOptions()))
                 .map(DeleteResult::getDeletedCount);
@@ -65,18 +130,6 @@ public class AlbumRepository {
     }
 
     private MongoCollection<Album> albumsCollection() {
-        var providers = fromProviders(
-                //CodecRegistries.fromCodecs(new StringObjectIdCodec()),
-                mongoConfiguration.getClientSettings().build().getCodecRegistry(),
-                PojoCodecProvider.builder()
-                        .register("com.example.photos")
-                        .register(new OptionalPropertyCodecProvider())
-                        .conventions(Conventions.DEFAULT_CONVENTIONS)
-                        .build());
-        var codecRegistry = fromRegistries(List.of(providers));
-        return mongoClient
-                .getDatabase("photos")
-                .getCollection("albums", Album.class)
-                .withCodecRegistry(codecRegistry);
+        return mongoCollections.get("photos", "albums", Album.class);
     }
 }
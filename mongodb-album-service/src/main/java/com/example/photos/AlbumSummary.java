@@ -0,0 +1,23 @@
+package com.example.photos;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+
+/**
+ * An album without its photo ids, the list representation of albums.
+ */
+public record AlbumSummary(ObjectId id, String name, Instant createdAt, int photoCount) {
+
+    static AlbumSummary of(Document document) {
+        return new AlbumSummary(
+                document.getObjectId("_id"),
+                document.getString("name"),
+                Optional.ofNullable(document.getDate("createdAt")).map(Date::toInstant).orElse(null),
+                document.getInteger("photoCount", 0)
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.photos;
+
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.List;
+
+public record AlbumWithPhotos(ObjectId id, String name, Instant createdAt, List<PhotoInfo> photos) {
+
+    public static AlbumWithPhotos of(Album album, List<PhotoInfo> photos) {
+        return new AlbumWithPhotos(album.getId(), album.getName(), album.getCreatedAt(), photos);
+    }
+}
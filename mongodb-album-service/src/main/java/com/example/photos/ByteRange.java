@@ -0,0 +1,62 @@
+package com.example.photos;
+
+import java.util.Optional;
+
+/**
+ * A single, inclusive byte range resolved against a file length, see RFC 9110 section 14.
+ */
+public record ByteRange(long start, long end) {
+    private static final String BYTES_UNIT = "bytes=";
+
+    public static ByteRange full(long length) {
+        return new ByteRange(0, length - 1);
+    }
+
+    /**
+     * Parses a {@code Range} header value. Returns empty when the header should be ignored and the whole
+     * file served: missing, malformed, another unit, or a multi-range request.
+     */
+    public static Optional<ByteRange> parse(String header, long length) {
+        if (header == null || !header.startsWith(BYTES_UNIT)) {
+            return Optional.empty();
+        }
+        var spec = header.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return Optional.empty();
+        }
+        try {
+            var first = spec.substring(0, dash).trim();
+            var last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix range, the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return Optional.empty();
+                }
+                return Optional.of(new ByteRange(Math.max(0, length - suffix), length - 1));
+            }
+            long start = Long.parseLong(first);
+            // an open range past the end is unsatisfiable, not malformed
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return Optional.empty();
+            }
+            return Optional.of(new ByteRange(start, Math.min(end, length - 1)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public boolean isSatisfiable() {
+        return start <= end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String contentRange(long total) {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+}
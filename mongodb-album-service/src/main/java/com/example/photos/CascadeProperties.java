@@ -0,0 +1,18 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
+
+/**
+ * Cascading album deletes check {@code batchSize} photos per query for other albums referencing them and delete
+ * at most {@code concurrency} photos at a time. Finished jobs can be looked up for {@code retention}.
+ */
+@ConfigurationProperties("albums.cascade")
+public record CascadeProperties(
+        @Bindable(defaultValue = "500") int batchSize,
+        @Bindable(defaultValue = "8") int concurrency,
+        @Bindable(defaultValue = "1h") Duration retention
+) {
+}
@@ -0,0 +1,4 @@
+package com.example.photos;
+
+public record CreateUploadSessionDto(String filename, String contentType, Long length) {
+}
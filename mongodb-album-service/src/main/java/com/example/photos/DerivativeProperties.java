@@ -0,0 +1,25 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.util.Map;
+
+/**
+ * Resized variants generated after an image upload, {@code variants} maps a variant name to the maximum
+ * width/height in pixels. At most {@code queueCapacity} uploads wait for {@code parallelism} workers.
+ */
+@ConfigurationProperties("photos.derivatives")
+public record DerivativeProperties(
+        @Bindable(defaultValue = "true") boolean enabled,
+        @Bindable(defaultValue = "2") int parallelism,
+        @Bindable(defaultValue = "64") int queueCapacity,
+        @Bindable(defaultValue = "33554432") long maxSourceBytes,
+        Map<String, Integer> variants
+) {
+    public DerivativeProperties {
+        if (variants == null) {
+            variants = Map.of("thumb", 200, "medium", 1024);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import jakarta.inject.Singleton;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Writes GridFS files without going through {@code GridFSBucket.uploadFromPublisher}. Each content stream,
+ * usually the pooled buffer of a multipart part, is read once straight into the {@code byte[]} that becomes the
+ * chunk's BSON binary, and closed, releasing the pooled buffer, as soon as it has been read. The bucket path copies
+ * every part into a heap {@code ByteBuffer} first and then again into its own chunk buffers.
+ */
+@Singleton
+public class GridFSChunkWriter {
+    private static final int BYTES_PER_INSERT = 4 * 1024 * 1024;
+
+    private final MongoCollection<Document> files;
+    private final MongoCollection<Document> chunks;
+    private final Mono<Void> indexes;
+
+    public GridFSChunkWriter(MongoCollections mongoCollections) {
+        this.files = mongoCollections.get("photos", "fs.files", Document.class).withWriteConcern(WriteConcern.MAJORITY);
+        this.chunks = mongoCollections.get("photos", "fs.chunks", Document.class).withWriteConcern(WriteConcern.MAJORITY);
+        // the indexes GridFSBucket creates on its first upload
+        this.indexes = Mono.defer(() -> Mono.from(files.createIndex(Indexes.ascending("filename", "uploadDate")))
+                        .then(Mono.from(chunks.createIndex(Indexes.ascending("files_id", "n"), new IndexOptions().unique(true))))
+                        .then())
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+    }
+
+    public Mono<Void> ensureIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Stores the streams as a new GridFS file and emits its id, the digest is updated with every byte stored.
+     * The metadata is taken once the last chunk has been written, chunks already written are removed again if
+     * the upload fails.
+     */
+    public Mono<ObjectId> write(String filename, Publisher<? extends InputStream> content, int chunkSize, Supplier<Document> metadata, MessageDigest digest) {
+        var fileId = new ObjectId();
+        int chunksPerInsert = Math.max(1, BYTES_PER_INSERT / chunkSize);
+        return ensureIndexes()
+                .then(Mono.defer(() -> {
+                    var buffer = new ChunkBuffer(chunkSize, digest);
+                    return Flux.from(content)
+                            .concatMapIterable(buffer::fill)
+                            .concatWith(Mono.fromSupplier(buffer::remainder))
+                            .index()
+                            .map(indexed -> chunk(fileId, indexed.getT1(), indexed.getT2()))
+                            .buffer(chunksPerInsert)
+                            .concatMap(this.chunks::insertMany)
+                            .then(Mono.defer(() -> Mono.from(this.files.insertOne(new Document("_id", fileId)
+                                    .append("length", buffer.length())
+                                    .append("chunkSize", chunkSize)
+                                    .append("uploadDate", new Date())
+                                    .append("filename", filename)
+                                    .append("metadata", metadata.get())))));
+                }))
+                .thenReturn(fileId)
+                .onErrorResume(error -> removeChunks(fileId).then(Mono.error(error)))
+                .doOnCancel(() -> removeChunks(fileId).subscribe());
+    }
+
+    private Mono<Void> removeChunks(ObjectId fileId) {
+        return Mono.from(this.chunks.deleteMany(Filters.eq("files_id", fileId))).then();
+    }
+
+    static Document chunk(ObjectId fileId, long n, byte[] data) {
+        return new Document("files_id", fileId)
+                .append("n", (int) n)
+                .append("data", new Binary(data));
+    }
+
+    /**
+     * Collects stream bytes into chunk sized arrays, the last chunk is trimmed to its length.
+     */
+    static final class ChunkBuffer {
+        private final int chunkSize;
+        private final MessageDigest digest;
+        private byte[] current;
+        private int position;
+        private long length;
+
+        ChunkBuffer(int chunkSize, MessageDigest digest) {
+            this.chunkSize = chunkSize;
+            this.digest = digest;
+            this.current = new byte[chunkSize];
+        }
+
+        List<byte[]> fill(InputStream content) {
+            List<byte[]> full = new ArrayList<>(1);
+            // closing a part's stream releases its pooled buffer
+            try (var in = content) {
+                int read;
+                while ((read = in.readNBytes(current, position, chunkSize - position)) > 0) {
+                    if (digest != null) {
+                        digest.update(current, position, read);
+                    }
+                    position += read;
+                    length += read;
+                    if (position == chunkSize) {
+                        full.add(current);
+                        current = new byte[chunkSize];
+                        position = 0;
+                    }
+                }
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+            return full;
+        }
+
+        byte[] remainder() {
+            return position == 0 ? null : Arrays.copyOf(current, position);
+        }
+
+        long length() {
+            return length;
+        }
+    }
+}
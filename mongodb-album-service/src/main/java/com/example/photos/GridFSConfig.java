@@ -11,9 +11,9 @@ import io.micronaut.context.annotation.Factory;
 public class GridFSConfig {
 
     @Bean
-    GridFSBucket gridFSBucket(MongoClient client) {
+    GridFSBucket gridFSBucket(MongoClient client, GridFSProperties properties) {
         return GridFSBuckets.create(client.getDatabase("photos"))
-                .withChunkSizeBytes(4096)
+                .withChunkSizeBytes(properties.chunkSize())
                 //.withReadConcern(ReadConcern.MAJORITY)
                 .withWriteConcern(WriteConcern.MAJORITY);
     }
@@ -0,0 +1,49 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.function.Supplier;
+
+/**
+ * Photo content as GridFS chunks in {@code fs.chunks}, files without a {@code metadata.store} live here.
+ */
+@Singleton
+@RequiredArgsConstructor
+public class GridFSPhotoStore implements PhotoStore {
+    public static final String NAME = "gridfs";
+
+    private final GridFSBucket bucket;
+    private final GridFSChunkWriter chunkWriter;
+    private final GridFSRangeReader rangeReader;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Mono<ObjectId> write(String filename, Publisher<? extends InputStream> content, int chunkSize, Supplier<Document> metadata, MessageDigest digest) {
+        return this.chunkWriter.write(filename, content, chunkSize, metadata, digest);
+    }
+
+    @Override
+    public Flux<ByteBuffer> read(GridFSFile file, ByteRange range) {
+        return this.rangeReader.read(file, range);
+    }
+
+    @Override
+    public Mono<Void> delete(GridFSFile file) {
+        return Mono.from(this.bucket.delete(file.getId()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * GridFS chunking, {@code chunkSize} is the bucket default. With {@code adaptiveChunkSize} enabled an upload
+ * that declares its size gets about {@link #TARGET_CHUNKS} chunks, clamped to {@code minChunkSize..maxChunkSize}.
+ */
+@ConfigurationProperties("photos.gridfs")
+public record GridFSProperties(
+        @Bindable(defaultValue = "261120") int chunkSize,
+        @Bindable(defaultValue = "false") boolean adaptiveChunkSize,
+        @Bindable(defaultValue = "65536") int minChunkSize,
+        @Bindable(defaultValue = "4194304") int maxChunkSize
+) {
+    static final int TARGET_CHUNKS = 16;
+
+    public int chunkSizeFor(long declaredSize) {
+        if (!adaptiveChunkSize || declaredSize <= 0) {
+            return chunkSize;
+        }
+        long perChunk = (declaredSize + TARGET_CHUNKS - 1) / TARGET_CHUNKS;
+        return (int) Math.max(minChunkSize, Math.min(maxChunkSize, perChunk));
+    }
+}
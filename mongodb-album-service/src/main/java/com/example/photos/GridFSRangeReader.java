@@ -0,0 +1,89 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a byte range of a GridFS file by reading only the {@code fs.chunks} documents that overlap it,
+ * the first and last chunk are sliced to the range bounds. Missing chunks fail the stream.
+ * <p>
+ * Only chunks cut for the chunk size the range is sliced with are read, see {@link GridFSRechunkJob}. When the file
+ * was rechunked after it was looked up, its chunks are all missing; the file is then looked up again and read in its
+ * new layout, provided nothing has been sent yet.
+ */
+@Singleton
+@RequiredArgsConstructor
+public class GridFSRangeReader {
+    private final MongoCollections mongoCollections;
+
+    public Flux<ByteBuffer> read(GridFSFile file, ByteRange range) {
+        if (!range.isSatisfiable()) {
+            return Flux.empty();
+        }
+        var sent = new AtomicLong();
+        return read(file.getId(), file.getChunkSize(), range, sent)
+                .onErrorResume(error -> error instanceof MongoGridFSException && sent.get() == 0,
+                        error -> Mono.from(filesCollection().find(Filters.eq("_id", file.getId()))
+                                        .projection(Projections.include("chunkSize"))
+                                        .first())
+                                .map(current -> current.getNumber("chunkSize").intValue())
+                                .filter(chunkSize -> chunkSize != file.getChunkSize())
+                                .switchIfEmpty(Mono.error(error))
+                                .flatMapMany(chunkSize -> read(file.getId(), chunkSize, range, sent)));
+    }
+
+    private Flux<ByteBuffer> read(BsonValue id, int chunkSize, ByteRange range, AtomicLong sent) {
+        int firstChunk = (int) (range.start() / chunkSize);
+        int lastChunk = (int) (range.end() / chunkSize);
+        var query = Filters.and(
+                Filters.eq("files_id", id),
+                Filters.gte("n", firstChunk),
+                Filters.lte("n", lastChunk),
+                Filters.or(Filters.exists(GridFSRechunkJob.CHUNK_SIZE, false), Filters.eq(GridFSRechunkJob.CHUNK_SIZE, chunkSize))
+        );
+        return Flux.from(chunksCollection().find(query)
+                        .projection(Projections.include("n", "data"))
+                        .sort(Sorts.ascending("n")))
+                .index()
+                .map(indexed -> {
+                    var chunk = indexed.getT2();
+                    int n = chunk.getNumber("n").intValue();
+                    if (n != firstChunk + indexed.getT1()) {
+                        throw new MongoGridFSException("Could not find file chunk for file_id: " + id + " at chunk index " + (firstChunk + indexed.getT1()));
+                    }
+                    byte[] data = chunk.getBinary("data").getData();
+                    long chunkStart = (long) n * chunkSize;
+                    int from = (int) Math.max(0, range.start() - chunkStart);
+                    int to = (int) Math.min(data.length, range.end() - chunkStart + 1);
+                    sent.addAndGet(to - from);
+                    return ByteBuffer.wrap(data, from, to - from);
+                })
+                // missing or short trailing chunks end the stream early, fail it rather than send less than announced
+                .concatWith(Mono.defer(() -> sent.get() == range.length()
+                        ? Mono.empty()
+                        : Mono.error(new MongoGridFSException("File " + id + " has " + sent.get()
+                        + " bytes in range " + range.start() + "-" + range.end() + ", expected " + range.length()))));
+    }
+
+    private MongoCollection<BsonDocument> filesCollection() {
+        return mongoCollections.get("photos", "fs.files", BsonDocument.class);
+    }
+
+    private MongoCollection<BsonDocument> chunksCollection() {
+        return mongoCollections.get("photos", "fs.chunks", BsonDocument.class);
+    }
+}
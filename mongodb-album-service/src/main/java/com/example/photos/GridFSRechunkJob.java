@@ -0,0 +1,168 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonValue;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites stored files whose chunk size differs from the one {@link GridFSProperties#chunkSizeFor(long)} gives
+ * their length, one file at a time.
+ * <p>
+ * The new chunks are written under a temporary {@code files_id} and record the chunk size of their layout in
+ * {@link #CHUNK_SIZE}, then the old chunks are removed, the new ones re-pointed and {@code fs.files.chunkSize}
+ * updated in one transaction. The transaction does not stop a reader that looked up the file before it from reading
+ * chunks after it, or from reading on across it. {@link GridFSRangeReader} therefore only reads chunks of the
+ * layout it slices for: a reader caught by the swap misses chunks and fails or reads the file again, it never
+ * slices chunks of the other layout.
+ * <p>
+ * Files are listed in short {@code _id} pages rather than through one cursor, which would sit idle while files are
+ * rewritten and could time out. Transactions need a replica set, the job is disabled unless
+ * {@code photos.gridfs.rechunk.enabled=true}.
+ */
+@Singleton
+@Requires(property = "photos.gridfs.rechunk.enabled", value = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class GridFSRechunkJob {
+    // chunk field recording the chunk size a rewritten chunk was cut for, chunks written on upload have none
+    static final String CHUNK_SIZE = "chunkSize";
+    private static final int CHUNKS_PER_INSERT = 64;
+    private static final int FILES_PER_PAGE = 500;
+
+    private final MongoClient mongoClient;
+    private final MongoCollections mongoCollections;
+    private final GridFSProperties properties;
+
+    @Scheduled(initialDelay = "1m", fixedDelay = "${photos.gridfs.rechunk.interval:1h}")
+    void run() {
+        var rechunked = rechunkAll().block();
+        log.debug("rechunked {} files", rechunked);
+    }
+
+    /**
+     * Rechunks every GridFS file whose chunk size is not the one an upload of its length gets now, emits the number
+     * of files rewritten. With adaptive chunk sizes enabled adaptively chunked files are already at their target
+     * and left alone.
+     */
+    public Mono<Long> rechunkAll() {
+        return page(null)
+                .expand(files -> files.size() < FILES_PER_PAGE ? Mono.empty() : page(files.getLast().get("_id")))
+                .concatMapIterable(files -> files)
+                .filter(file -> file.getInt32("chunkSize").getValue() != target(file))
+                .concatMap(file -> rechunk(file.get("_id"), file.getInt32("chunkSize").getValue(), target(file))
+                        .thenReturn(1L)
+                        .onErrorResume(error -> {
+                            log.warn("failed to rechunk file {}: {}", file.get("_id"), error.getMessage());
+                            return Mono.empty();
+                        }))
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<List<BsonDocument>> page(BsonValue after) {
+        var inGridFS = Filters.exists("metadata." + PhotoStore.STORE, false);
+        return Flux.from(filesCollection()
+                        .find(after == null ? inGridFS : Filters.and(inGridFS, Filters.gt("_id", after)))
+                        .projection(Projections.include("_id", "chunkSize", "length"))
+                        .sort(Sorts.ascending("_id"))
+                        .limit(FILES_PER_PAGE))
+                .collectList()
+                .filter(files -> !files.isEmpty());
+    }
+
+    private int target(BsonDocument file) {
+        return properties.chunkSizeFor(file.getNumber("length").longValue());
+    }
+
+    Mono<Void> rechunk(BsonValue id, int currentChunkSize, int target) {
+        var tempId = new BsonObjectId();
+        var chunks = chunksCollection();
+        Flux<byte[]> data = Flux.from(chunks.find(Filters.eq("files_id", id))
+                        .projection(Projections.include("data"))
+                        .sort(Sorts.ascending("n")))
+                .map(chunk -> chunk.getBinary("data").getData());
+
+        var copy = resize(data, target)
+                .index()
+                .map(indexed -> new BsonDocument("files_id", tempId)
+                        .append("n", new BsonInt32(indexed.getT1().intValue()))
+                        .append("data", new BsonBinary(indexed.getT2()))
+                        .append(CHUNK_SIZE, new BsonInt32(target)))
+                .buffer(CHUNKS_PER_INSERT)
+                .concatMap(batch -> chunks.insertMany(batch))
+                .then();
+
+        var swap = Mono.usingWhen(
+                this.mongoClient.startSession(),
+                session -> {
+                    session.startTransaction();
+                    return Mono.from(chunks.deleteMany(session, Filters.eq("files_id", id)))
+                            .then(Mono.from(chunks.updateMany(session, Filters.eq("files_id", tempId), Updates.set("files_id", id))))
+                            .then(Mono.from(filesCollection().updateOne(session,
+                                    Filters.and(Filters.eq("_id", id), Filters.eq("chunkSize", currentChunkSize)),
+                                    Updates.set("chunkSize", target))))
+                            .then();
+                },
+                session -> Mono.from(session.commitTransaction()).doFinally(s -> session.close()),
+                (session, error) -> Mono.from(session.abortTransaction()).doFinally(s -> session.close()),
+                session -> Mono.from(session.abortTransaction()).doFinally(s -> session.close())
+        );
+
+        return copy.then(swap)
+                .doOnSuccess(v -> log.debug("rechunked file {} from {} to {} bytes", id, currentChunkSize, target))
+                .onErrorResume(error -> Mono.from(chunks.deleteMany(Filters.eq("files_id", tempId)))
+                        .then(Mono.error(error)));
+    }
+
+    /**
+     * Re-slices a stream of chunk payloads into payloads of {@code size} bytes, the last one may be shorter.
+     */
+    static Flux<byte[]> resize(Flux<byte[]> data, int size) {
+        return Flux.defer(() -> {
+            var pending = new ByteArrayOutputStream(size);
+            return data
+                    .concatMapIterable(bytes -> {
+                        List<byte[]> out = new ArrayList<>();
+                        int offset = 0;
+                        while (offset < bytes.length) {
+                            int take = Math.min(size - pending.size(), bytes.length - offset);
+                            pending.write(bytes, offset, take);
+                            offset += take;
+                            if (pending.size() == size) {
+                                out.add(pending.toByteArray());
+                                pending.reset();
+                            }
+                        }
+                        return out;
+                    })
+                    .concatWith(Mono.fromCallable(() -> pending.size() > 0 ? pending.toByteArray() : null));
+        });
+    }
+
+    private MongoCollection<BsonDocument> filesCollection() {
+        return mongoCollections.get("photos", "fs.files", BsonDocument.class);
+    }
+
+    private MongoCollection<BsonDocument> chunksCollection() {
+        return mongoCollections.get("photos", "fs.chunks", BsonDocument.class);
+    }
+}
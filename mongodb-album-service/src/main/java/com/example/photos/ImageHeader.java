@@ -0,0 +1,199 @@
+package com.example.photos;
+
+import org.bson.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Dimensions, EXIF orientation and capture date read from the leading bytes of a JPEG, PNG or GIF file.
+ * Fields the header does not carry, or that lie beyond the bytes given, are {@code null}.
+ */
+public record ImageHeader(Integer width, Integer height, Integer orientation, Date takenAt) {
+    public static final String WIDTH = "width";
+    public static final String HEIGHT = "height";
+    public static final String ORIENTATION = "orientation";
+    public static final String TAKEN_AT = "takenAt";
+
+    private static final ImageHeader NONE = new ImageHeader(null, null, null, null);
+    private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    public static ImageHeader parse(byte[] data, int length) {
+        try {
+            if (length >= 4 && u8(data, 0) == 0xFF && u8(data, 1) == 0xD8) {
+                return jpeg(data, length);
+            }
+            if (length >= 24 && u8(data, 0) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G'
+                    && data[12] == 'I' && data[13] == 'H' && data[14] == 'D' && data[15] == 'R') {
+                return new ImageHeader(u32be(data, 16), u32be(data, 20), null, null);
+            }
+            if (length >= 10 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8') {
+                return new ImageHeader(u16le(data, 6), u16le(data, 8), null, null);
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // truncated or corrupt header, keep nothing
+        }
+        return NONE;
+    }
+
+    /**
+     * The known fields as {@code fs.files} metadata.
+     */
+    public Document toMetadata() {
+        var metadata = new Document();
+        if (width != null && height != null) {
+            metadata.append(WIDTH, width).append(HEIGHT, height);
+        }
+        if (orientation != null) {
+            metadata.append(ORIENTATION, orientation);
+        }
+        if (takenAt != null) {
+            metadata.append(TAKEN_AT, takenAt);
+        }
+        return metadata;
+    }
+
+    // walks the segments up to the first frame header or the start of scan
+    private static ImageHeader jpeg(byte[] data, int length) {
+        Integer orientation = null;
+        Date takenAt = null;
+        int pos = 2;
+        while (pos + 4 <= length) {
+            if (u8(data, pos) != 0xFF) {
+                break;
+            }
+            int marker = u8(data, pos + 1);
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                break;
+            }
+            int segmentLength = u16be(data, pos + 2);
+            int segment = pos + 4;
+            int segmentEnd = Math.min(length, pos + 2 + segmentLength);
+            if (marker == 0xE1 && segmentEnd - segment > 14 && new String(data, segment, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+                var exif = exif(data, segment + 6, segmentEnd);
+                orientation = exif.orientation();
+                takenAt = exif.takenAt();
+            } else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                if (segment + 5 > length) {
+                    break;
+                }
+                return new ImageHeader(u16be(data, segment + 3), u16be(data, segment + 1), orientation, takenAt);
+            }
+            pos += 2 + segmentLength;
+        }
+        return new ImageHeader(null, null, orientation, takenAt);
+    }
+
+    private static ImageHeader exif(byte[] data, int tiff, int end) {
+        boolean littleEndian = data[tiff] == 'I' && data[tiff + 1] == 'I';
+        var reader = new TiffReader(data, tiff, end, littleEndian);
+        if (reader.u16(2) != 42) {
+            return NONE;
+        }
+        Integer orientation = null;
+        String dateTime = null;
+        String dateTimeOriginal = null;
+        String offsetTimeOriginal = null;
+        int exifIfd = -1;
+        int ifd = reader.u32(4);
+        int count = reader.u16(ifd);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            switch (reader.u16(entry)) {
+                case 0x0112 -> orientation = reader.u16(entry + 8);
+                case 0x0132 -> dateTime = reader.ascii(entry);
+                case 0x8769 -> exifIfd = reader.u32(entry + 8);
+                default -> {
+                }
+            }
+        }
+        if (exifIfd > 0) {
+            count = reader.u16(exifIfd);
+            for (int i = 0; i < count; i++) {
+                int entry = exifIfd + 2 + i * 12;
+                switch (reader.u16(entry)) {
+                    case 0x9003 -> dateTimeOriginal = reader.ascii(entry);
+                    case 0x9011 -> offsetTimeOriginal = reader.ascii(entry);
+                    default -> {
+                    }
+                }
+            }
+        }
+        return new ImageHeader(null, null,
+                orientation != null && orientation >= 1 && orientation <= 8 ? orientation : null,
+                date(dateTimeOriginal != null ? dateTimeOriginal : dateTime, offsetTimeOriginal));
+    }
+
+    // EXIF dates carry no zone, UTC unless the offset tag says otherwise
+    private static Date date(String value, String offset) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            var zone = offset == null ? ZoneOffset.UTC : ZoneOffset.of(offset.trim());
+            return Date.from(LocalDateTime.parse(value.trim(), EXIF_DATE).toInstant(zone));
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private record TiffReader(byte[] data, int start, int end, boolean littleEndian) {
+
+        int u16(int offset) {
+            int at = check(offset, 2);
+            return littleEndian ? u16le(data, at) : u16be(data, at);
+        }
+
+        int u32(int offset) {
+            int at = check(offset, 4);
+            return littleEndian ? u16le(data, at) | u16le(data, at + 2) << 16 : u32be(data, at);
+        }
+
+        // an ASCII entry, values of up to four bytes are stored inline
+        String ascii(int entry) {
+            int count = u32(entry + 4);
+            int at = count <= 4 ? entry + 8 : u32(entry + 8);
+            check(at, count);
+            int length = count;
+            while (length > 0 && data[start + at + length - 1] == 0) {
+                length--;
+            }
+            return new String(data, start + at, length, StandardCharsets.US_ASCII);
+        }
+
+        private int check(int offset, int length) {
+            if (offset < 0 || length < 0 || start + offset + length > end) {
+                throw new IndexOutOfBoundsException(offset);
+            }
+            return start + offset;
+        }
+    }
+
+    private static int u8(byte[] data, int at) {
+        return data[at] & 0xFF;
+    }
+
+    private static int u16be(byte[] data, int at) {
+        return u8(data, at) << 8 | u8(data, at + 1);
+    }
+
+    private static int u16le(byte[] data, int at) {
+        return u8(data, at) | u8(data, at + 1) << 8;
+    }
+
+    private static int u32be(byte[] data, int at) {
+        return u16be(data, at) << 16 | u16be(data, at + 2);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.photos;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps a copy of the first {@link #LIMIT} bytes read through the wrapped streams of one upload, enough for
+ * the frame header and EXIF segment of any common image, the rest of the content is not retained.
+ */
+final class ImageHeaderCapture {
+    static final int LIMIT = 128 * 1024;
+
+    private final byte[] head = new byte[LIMIT];
+    private int length;
+
+    InputStream wrap(InputStream content) {
+        return new FilterInputStream(content) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0 && length < LIMIT) {
+                    head[length++] = (byte) b;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0 && length < LIMIT) {
+                    int copy = Math.min(read, LIMIT - length);
+                    System.arraycopy(b, off, head, length, copy);
+                    length += copy;
+                }
+                return read;
+            }
+        };
+    }
+
+    ImageHeader header() {
+        return ImageHeader.parse(head, length);
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed photo content on the local filesystem, stored once under its SHA-256
+ * ({@code <root>/<first two hex digits>/<hash>}) and read through memory mapped regions of the file,
+ * so downloads never copy the content onto the heap. The {@code fs.files} document keeps the name of the
+ * content in {@code metadata.contentKey} and has no chunks.
+ * <p>
+ * References are counted per hash in {@code photos.local_contents}, claimed before the content is published and
+ * released after the {@code fs.files} document is gone. The counter also names the generation of the content, a
+ * writer arriving after the last reference was released gets a new name, so it never shares a file that is about
+ * to be deleted.
+ */
+@Singleton
+@Slf4j
+public class LocalPhotoStore implements PhotoStore {
+    public static final String NAME = "local";
+    static final String CONTENT_KEY = "contentKey";
+    private static final String REFS = "refs";
+    private static final long MAP_SIZE = 4 * 1024 * 1024;
+
+    private final Path root;
+    private final MongoCollection<Document> files;
+    private final MongoCollection<Document> contents;
+
+    @Inject
+    public LocalPhotoStore(PhotoStoreProperties properties, MongoCollections mongoCollections) {
+        this(Path.of(properties.localRoot()),
+                mongoCollections.get("photos", "fs.files", Document.class),
+                mongoCollections.get("photos", "local_contents", Document.class));
+    }
+
+    LocalPhotoStore(Path root, MongoCollection<Document> files, MongoCollection<Document> contents) {
+        this.root = root;
+        this.files = files.withWriteConcern(WriteConcern.MAJORITY);
+        this.contents = contents.withWriteConcern(WriteConcern.MAJORITY);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public Mono<ObjectId> write(String filename, Publisher<? extends InputStream> content, int chunkSize, Supplier<Document> metadata, MessageDigest digest) {
+        var fileId = new ObjectId();
+        // the caller's digest is finished by the caller, the content key comes from a digest of our own
+        var key = sha256();
+        return Mono.fromCallable(() -> {
+                    Files.createDirectories(root);
+                    return Files.createTempFile(root, "upload-", ".tmp");
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(temp -> Mono.using(
+                                () -> FileChannel.open(temp, StandardOpenOption.WRITE),
+                                channel -> Flux.from(content)
+                                        .publishOn(Schedulers.boundedElastic())
+                                        .map(in -> copy(in, channel, digest, key))
+                                        .reduce(0L, Long::sum),
+                                LocalPhotoStore::closeQuietly)
+                        .flatMap(length -> {
+                            var hash = HexFormat.of().formatHex(key.digest());
+                            return acquire(hash)
+                                    .flatMap(contentKey -> Mono.fromCallable(() -> moveIntoPlace(temp, contentKey))
+                                            .subscribeOn(Schedulers.boundedElastic())
+                                            .then(Mono.from(this.files.insertOne(new Document("_id", fileId)
+                                                    .append("length", length)
+                                                    .append("chunkSize", chunkSize)
+                                                    .append("uploadDate", new Date())
+                                                    .append("filename", filename)
+                                                    .append("metadata", new Document(metadata.get())
+                                                            .append(STORE, NAME)
+                                                            .append(CONTENT_KEY, contentKey)))))
+                                            .onErrorResume(error -> release(hash).then(Mono.error(error))));
+                        })
+                        .doOnError(error -> deleteQuietly(temp)))
+                .thenReturn(fileId);
+    }
+
+    @Override
+    public Flux<ByteBuffer> read(GridFSFile file, ByteRange range) {
+        if (!range.isSatisfiable()) {
+            return Flux.empty();
+        }
+        var path = path(file.getMetadata().getString(CONTENT_KEY));
+        // a mapping stays valid after its channel is closed
+        return Flux.using(
+                        () -> FileChannel.open(path, StandardOpenOption.READ),
+                        channel -> regions(channel, range),
+                        LocalPhotoStore::closeQuietly)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // content shorter than the range fails instead of ending the stream early
+    private static Flux<ByteBuffer> regions(FileChannel channel, ByteRange range) {
+        try {
+            if (channel.size() <= range.end()) {
+                return Flux.error(new IOException("content has " + channel.size() + " bytes, range ends at " + range.end()));
+            }
+        } catch (IOException e) {
+            return Flux.error(e);
+        }
+        return Flux.generate(range::start, (position, sink) -> {
+            long remaining = range.end() + 1 - position;
+            if (remaining <= 0) {
+                sink.complete();
+                return position;
+            }
+            long size = Math.min(remaining, MAP_SIZE);
+            try {
+                sink.next(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            } catch (IOException e) {
+                sink.error(e);
+            }
+            return position + size;
+        });
+    }
+
+    /**
+     * Removes the photo document, the content goes away with the last reference to it.
+     */
+    @Override
+    public Mono<Void> delete(GridFSFile file) {
+        var contentKey = file.getMetadata().getString(CONTENT_KEY);
+        return Mono.from(this.files.deleteOne(Filters.eq("_id", file.getId())))
+                .then(release(hash(contentKey)));
+    }
+
+    // takes a reference to the content with the hash, emits the name the content is stored under
+    private Mono<String> acquire(String hash) {
+        return Mono.from(this.contents.findOneAndUpdate(
+                        Filters.eq("_id", hash),
+                        Updates.combine(Updates.inc(REFS, 1), Updates.setOnInsert(CONTENT_KEY, hash + "-" + new ObjectId().toHexString())),
+                        new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)))
+                .map(counter -> counter.getString(CONTENT_KEY));
+    }
+
+    // drops a reference, the last one removes the counter and then the content
+    private Mono<Void> release(String hash) {
+        return Mono.from(this.contents.findOneAndUpdate(
+                        Filters.and(Filters.eq("_id", hash), Filters.gt(REFS, 0)),
+                        Updates.inc(REFS, -1),
+                        new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)))
+                .filter(counter -> counter.getInteger(REFS) == 0)
+                // a writer taking a reference meanwhile keeps the counter and the content
+                .flatMap(counter -> Mono.from(this.contents.deleteOne(Filters.and(Filters.eq("_id", hash), Filters.eq(REFS, 0))))
+                        .filter(result -> result.getDeletedCount() == 1)
+                        .flatMap(result -> Mono.fromCallable(() -> Files.deleteIfExists(path(counter.getString(CONTENT_KEY))))
+                                .subscribeOn(Schedulers.boundedElastic())))
+                .then();
+    }
+
+    private static String hash(String contentKey) {
+        var separator = contentKey.indexOf('-');
+        return separator < 0 ? contentKey : contentKey.substring(0, separator);
+    }
+
+    private Path path(String contentKey) {
+        return root.resolve(contentKey.substring(0, 2)).resolve(contentKey);
+    }
+
+    private String moveIntoPlace(Path temp, String contentKey) throws IOException {
+        var target = path(contentKey);
+        if (Files.exists(target)) {
+            // same content stored before
+            Files.delete(temp);
+        } else {
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return contentKey;
+    }
+
+    private static long copy(InputStream content, FileChannel channel, MessageDigest digest, MessageDigest key) {
+        try (var in = new DigestInputStream(digest == null ? content : new DigestInputStream(content, digest), key)) {
+            return in.transferTo(Channels.newOutputStream(channel));
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("failed to close {}", channel, e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("failed to delete {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.photos;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import io.micronaut.http.MediaType;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Size-bounded W-TinyLFU cache of small, frequently downloaded photos. Content is copied once into a direct
+ * {@link ByteBuffer}, so cached bytes live off-heap, and every response reads its own read-only view.
+ * GridFS files are immutable, entries only go away by eviction or {@link #invalidate(ObjectId)}.
+ */
+@Singleton
+@Slf4j
+public class PhotoCache {
+    private final PhotoCacheProperties properties;
+    private final Cache<Key, CachedPhoto> cache;
+
+    public PhotoCache(PhotoCacheProperties properties) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.maxBytes())
+                .weigher((Key key, CachedPhoto photo) -> photo.data().capacity())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Strong ETag of a stored file, the content hash when known, otherwise the immutable id and length.
+     */
+    public static String etag(GridFSFile file) {
+        var sha256 = Optional.ofNullable(file.getMetadata()).map(metadata -> metadata.getString("sha256"));
+        return sha256.map(hash -> "\"" + hash + "\"")
+                .orElseGet(() -> "\"" + file.getObjectId().toHexString() + "-" + file.getLength() + "\"");
+    }
+
+    /**
+     * Evaluates an {@code If-None-Match} header against an entity tag, using the weak comparison RFC 9110 requires.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public CachedPhoto get(ObjectId id, String variant) {
+        if (!properties.enabled()) {
+            return null;
+        }
+        return cache.getIfPresent(new Key(id, variant));
+    }
+
+    public boolean isCacheable(GridFSFile file) {
+        return properties.enabled() && file.getLength() <= properties.maxEntryBytes();
+    }
+
+    /**
+     * Copies the content of a file into a direct buffer and caches it under the requested photo id and variant.
+     */
+    public Mono<CachedPhoto> load(ObjectId id, String variant, GridFSFile file, Flux<ByteBuffer> content) {
+        var contentType = Optional.ofNullable(file.getMetadata())
+                .map(metadata -> metadata.getString("contentType"))
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        return content
+                .reduceWith(() -> ByteBuffer.allocateDirect((int) file.getLength()), ByteBuffer::put)
+                .map(buffer -> {
+                    var photo = new CachedPhoto(buffer.flip().asReadOnlyBuffer(), etag(file), contentType);
+                    cache.put(new Key(id, variant), photo);
+                    return photo;
+                });
+    }
+
+    public void invalidate(ObjectId id) {
+        cache.asMap().keySet().removeIf(key -> key.id().equals(id));
+    }
+
+    public Map<String, Object> stats() {
+        var stats = cache.stats();
+        return Map.of(
+                "entries", cache.estimatedSize(),
+                "bytes", cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L),
+                "hits", stats.hitCount(),
+                "misses", stats.missCount(),
+                "evictions", stats.evictionCount()
+        );
+    }
+
+    private record Key(ObjectId id, String variant) {
+    }
+
+    public record CachedPhoto(ByteBuffer data, String etag, String contentType) {
+
+        public long length() {
+            return data.capacity();
+        }
+
+        public Flux<ByteBuffer> read(ByteRange range) {
+            if (!range.isSatisfiable()) {
+                return Flux.empty();
+            }
+            return Flux.just(data.duplicate()
+                    .position((int) range.start())
+                    .limit((int) range.end() + 1)
+                    .slice());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * Hot photo cache, holds up to {@code maxBytes} of photo content off-heap, files larger than
+ * {@code maxEntryBytes} are always streamed from GridFS.
+ */
+@ConfigurationProperties("photos.cache")
+public record PhotoCacheProperties(
+        @Bindable(defaultValue = "true") boolean enabled,
+        @Bindable(defaultValue = "67108864") long maxBytes,
+        @Bindable(defaultValue = "2097152") long maxEntryBytes
+) {
+}
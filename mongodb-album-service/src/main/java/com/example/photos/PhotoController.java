@@ -1,23 +1,47 @@
 package com.example.photos;
 
-import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.example.NdJson;
+import com.example.Pagination;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
 import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.*;
+import io.micronaut.http.multipart.PartData;
 import io.micronaut.http.multipart.StreamingFileUpload;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.Exceptions;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
-import static io.micronaut.http.HttpResponse.noContent;
-import static io.micronaut.http.HttpResponse.ok;
+import static io.micronaut.http.HttpResponse.*;
 
 @Controller("/photos")
 @RequiredArgsConstructor
@@ -25,63 +49,226 @@ import static io.micronaut.http.HttpResponse.ok;
 public class PhotoController {
 
     private final GridFSBucket bucket;
+    private final GridFSProperties gridFSProperties;
+    private final PhotoDerivatives derivatives;
+    private final PhotoDeduplication deduplication;
+    private final PhotoCache photoCache;
+    private final NdJson ndJson;
+    private final UploadProperties uploadProperties;
+    private final PhotoStores photoStores;
+    private final StorageStatsService storageStats;
+    private final PhotoDeletion photoDeletion;
 
     @Get(uri = "", produces = {MediaType.APPLICATION_JSON})
-    public Flux all() {
-        return Flux.from(this.bucket.find())
-                .map(file -> new PhotoInfo(
-                                file.getObjectId().toHexString(),
-                                file.getFilename(),
-                                file.getChunkSize(),
-                                file.getLength(),
-                                file.getUploadDate(),
-                                file.getMetadata().getString("contentType")
-                        )
-                );
+    public Flux<PhotoInfo> all(@Nullable @QueryValue String contentType,
+                               @Nullable @QueryValue Integer minWidth,
+                               @Nullable @QueryValue Integer minHeight,
+                               @Nullable @QueryValue Instant takenAfter,
+                               @Nullable @QueryValue Instant takenBefore,
+                               @Nullable @QueryValue ObjectId after,
+                               @QueryValue(defaultValue = Pagination.DEFAULT_LIMIT) int limit) {
+        var filter = filter(contentType, minWidth, minHeight, takenAfter, takenBefore);
+        return findAll(filter, after, Pagination.pageSize(limit));
+    }
+
+    @Get(uri = "", produces = {NdJson.MEDIA_TYPE})
+    public Flux<byte[]> stream(@Nullable @QueryValue String contentType,
+                               @Nullable @QueryValue Integer minWidth,
+                               @Nullable @QueryValue Integer minHeight,
+                               @Nullable @QueryValue Instant takenAfter,
+                               @Nullable @QueryValue Instant takenBefore,
+                               @Nullable @QueryValue ObjectId after,
+                               @QueryValue(defaultValue = "0") int limit) {
+        var filter = filter(contentType, minWidth, minHeight, takenAfter, takenBefore);
+        return this.ndJson.write(findAll(filter, after, Math.max(0, limit)));
+    }
+
+    private static Bson filter(String contentType, Integer minWidth, Integer minHeight, Instant takenAfter, Instant takenBefore) {
+        var filters = new ArrayList<Bson>();
+        filters.add(Filters.exists(PhotoDerivatives.DERIVATIVE_OF, false));
+        if (contentType != null) {
+            filters.add(Filters.eq("metadata.contentType", contentType));
+        }
+        if (minWidth != null) {
+            filters.add(Filters.gte("metadata." + ImageHeader.WIDTH, minWidth));
+        }
+        if (minHeight != null) {
+            filters.add(Filters.gte("metadata." + ImageHeader.HEIGHT, minHeight));
+        }
+        if (takenAfter != null) {
+            filters.add(Filters.gt("metadata." + ImageHeader.TAKEN_AT, Date.from(takenAfter)));
+        }
+        if (takenBefore != null) {
+            filters.add(Filters.lt("metadata." + ImageHeader.TAKEN_AT, Date.from(takenBefore)));
+        }
+        return Filters.and(filters);
+    }
+
+    private Flux<PhotoInfo> findAll(Bson filter, ObjectId after, int limit) {
+        return Flux.from(this.bucket.find(Filters.and(filter, Pagination.after(after)))
+                        .sort(Sorts.ascending("_id"))
+                        .limit(limit)
+                        .batchSize(Pagination.batchSize(limit)))
+                .map(PhotoInfo::of);
     }
 
     @Post(uri = "", consumes = {MediaType.MULTIPART_FORM_DATA})
     public Mono<HttpResponse<?>> upload(@Part StreamingFileUpload file) {
+        return store(file)
+                .map(ObjectId::toHexString)
+                .map(id -> ok(Map.of("id", id)));
+    }
+
+    /**
+     * Stores every {@code files} part of the request, parts are consumed as they arrive and at most
+     * {@code photos.upload.concurrency} of them are written at the same time. Emits one result per part,
+     * in request order, a failed part does not fail the others.
+     */
+    @Post(uri = "/batch", consumes = {MediaType.MULTIPART_FORM_DATA}, produces = {MediaType.APPLICATION_JSON})
+    public Flux<UploadResult> uploadAll(@Part("files") Publisher<StreamingFileUpload> files) {
+        return Flux.from(files)
+                .flatMapSequential(file -> store(file)
+                                .map(id -> UploadResult.stored(file.getFilename(), id.toHexString()))
+                                .onErrorResume(error -> {
+                                    log.warn("failed to store {}: {}", file.getFilename(), error.getMessage());
+                                    file.discard();
+                                    return Mono.just(UploadResult.failed(file.getFilename(), error.getMessage()));
+                                }),
+                        this.uploadProperties.concurrency());
+    }
+
+    private Mono<ObjectId> store(StreamingFileUpload file) {
         var filename = file.getFilename();
         var name = file.getName();
         var contentType = file.getContentType();
         var size = file.getSize();
         log.debug("uploading file...\n filename:{},\n name:{},\n contentType: {},\n size: {} ", filename, name, contentType, size);
-        var options = new GridFSUploadOptions();
-        contentType.ifPresent(c -> options.metadata(new Document("contentType", c)));
-        return Mono.from(this.bucket.uploadFromPublisher(
-                                filename,
-                                Mono.from(file).mapNotNull(partData -> {
-                                    try {
-                                        return partData.getByteBuffer();
-                                    } catch (IOException e) {
-                                        e.printStackTrace();
-                                    }
-                                    return null;
-                                }),
-                                options
-                        )
-                )
-                .map(ObjectId::toHexString)
-                .map(id -> ok(Map.of("id", id)));
+        var chunkSize = gridFSProperties.chunkSizeFor(size);
+        var metadata = new Document();
+        contentType.ifPresent(c -> metadata.append("contentType", c.toString()));
+        var digest = sha256();
+        var crc = new CRC32();
+        Flux<InputStream> content = Flux.from(file)
+                .map(PhotoController::inputStream)
+                .<InputStream>map(in -> new CheckedInputStream(in, crc));
+        var capture = contentType.filter(type -> type.getType().equals("image")).map(type -> new ImageHeaderCapture());
+        if (capture.isPresent()) {
+            content = content.map(capture.get()::wrap);
+        }
+        // the store asks for the metadata once it has read all of the content, so the CRC and headers are complete
+        Supplier<Document> completed = () -> {
+            capture.ifPresent(image -> metadata.putAll(image.header().toMetadata()));
+            return metadata.append(AlbumArchiver.CRC32, crc.getValue());
+        };
+        return this.photoStores.writer().write(filename, content, chunkSize, completed, digest)
+                .flatMap(uploaded -> this.deduplication.deduplicate(uploaded, HexFormat.of().formatHex(digest.digest()))
+                        .flatMap(id -> {
+                            if (!id.equals(uploaded)) {
+                                return Mono.just(id);
+                            }
+                            this.derivatives.submit(id, contentType.map(MediaType::toString).orElse(null));
+                            return this.storageStats.photoStored(id).thenReturn(id);
+                        })
+                );
+    }
+
+    private static InputStream inputStream(PartData part) {
+        try {
+            return part.getInputStream();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Get(uri = "/{id}", produces = {MediaType.APPLICATION_OCTET_STREAM})
-    public Mono<HttpResponse<?>> download(@PathVariable ObjectId id) {
-        return Mono.from(this.bucket.downloadToPublisher(id))
-                .map(HttpResponse::ok);
+    public Mono<MutableHttpResponse<?>> download(@PathVariable ObjectId id,
+                                                 @Nullable @QueryValue String variant,
+                                                 @Nullable @Header(HttpHeaders.RANGE) String range,
+                                                 @Nullable @Header(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        var cached = this.photoCache.get(id, variant);
+        if (cached != null) {
+            return Mono.just(respond(cached.etag(), cached.contentType(), cached.length(), range, ifNoneMatch, cached::read));
+        }
+        Mono<GridFSFile> original = Mono.from(this.bucket.find(Filters.eq("_id", id)).first());
+        // a variant that has not been generated (yet) falls back to the original
+        var photo = variant == null ? original : this.derivatives.find(id, variant).switchIfEmpty(original);
+        return photo
+                .flatMap(file -> {
+                    var store = this.photoStores.forFile(file);
+                    var etag = PhotoCache.etag(file);
+                    if (!PhotoCache.matches(ifNoneMatch, etag) && this.photoCache.isCacheable(file)) {
+                        // never cache the original under a variant key
+                        var cachedVariant = file.getObjectId().equals(id) ? null : variant;
+                        return this.photoCache.load(id, cachedVariant, file, store.read(file, ByteRange.full(file.getLength())))
+                                .map(loaded -> respond(loaded.etag(), loaded.contentType(), loaded.length(), range, ifNoneMatch, loaded::read));
+                    }
+                    return Mono.just(respond(etag, contentType(file), file.getLength(), range, ifNoneMatch, r -> store.read(file, r)));
+                })
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    private static MutableHttpResponse<?> respond(String etag, String contentType, long length,
+                                                  String range, String ifNoneMatch,
+                                                  Function<ByteRange, Flux<ByteBuffer>> content) {
+        if (PhotoCache.matches(ifNoneMatch, etag)) {
+            return status(HttpStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, etag);
+        }
+        var byteRange = ByteRange.parse(range, length);
+        if (byteRange.isEmpty()) {
+            return ok(content.apply(ByteRange.full(length)))
+                    .contentType(contentType)
+                    .contentLength(length)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .header(HttpHeaders.ETAG, etag);
+        }
+        var requested = byteRange.get();
+        if (!requested.isSatisfiable()) {
+            return status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        }
+        return status(HttpStatus.PARTIAL_CONTENT)
+                .body(content.apply(requested))
+                .contentType(contentType)
+                .contentLength(requested.length())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CONTENT_RANGE, requested.contentRange(length));
+    }
+
+    private static String contentType(GridFSFile file) {
+        return Optional.ofNullable(file.getMetadata())
+                .map(metadata -> metadata.getString("contentType"))
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
     }
 
     @Get(uri = "/{id}/info", produces = {MediaType.APPLICATION_JSON})
     public Mono<HttpResponse<?>> fileInfo(@PathVariable ObjectId id) {
         return Mono.from(this.bucket.downloadToPublisher(id).getGridFSFile())
-                .map(file -> new PhotoInfo(id.toHexString(), file.getFilename(), file.getChunkSize(), file.getLength(), file.getUploadDate(), file.getMetadata().getString("contentType")))
+                .map(PhotoInfo::of)
                 .map(HttpResponse::ok);
     }
 
+    @Get(uri = "/stats", produces = {MediaType.APPLICATION_JSON})
+    public Mono<StorageStats> storageStats() {
+        return this.storageStats.global();
+    }
+
+    @Get(uri = "/cache/stats", produces = {MediaType.APPLICATION_JSON})
+    public Map<String, Object> cacheStats() {
+        return this.photoCache.stats();
+    }
+
     @Delete(uri = "/{id}")
     public Mono<HttpResponse<?>> delete(@PathVariable ObjectId id) {
-        return Mono.from(this.bucket.delete(id))
-                .map(v -> noContent());
+        return this.photoDeletion.delete(id)
+                .thenReturn(noContent());
     }
 }
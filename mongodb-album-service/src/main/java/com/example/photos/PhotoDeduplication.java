@@ -0,0 +1,107 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Field;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Content-addressed photo storage on top of GridFS. Every stored file records the SHA-256 of its bytes in
+ * {@code metadata.sha256}, unique across {@code fs.files}, and the number of uploads sharing it in
+ * {@code metadata.refCount}.
+ */
+@Singleton
+@Slf4j
+public class PhotoDeduplication {
+    static final String SHA256 = "metadata.sha256";
+    static final String REF_COUNT = "metadata.refCount";
+
+    // decrements the count and drops the hash with the last reference
+    private static final List<Bson> RELEASE = List.of(
+            Aggregates.set(new Field<>(REF_COUNT, new Document("$subtract", List.of("$" + REF_COUNT, 1)))),
+            Aggregates.set(new Field<>(SHA256, new Document("$cond",
+                    List.of(new Document("$gt", List.of("$" + REF_COUNT, 0)), "$" + SHA256, "$$REMOVE"))))
+    );
+
+    private final GridFSBucket bucket;
+    private final PhotoStores photoStores;
+    private final MongoCollections mongoCollections;
+    private final Mono<String> hashIndex;
+
+    public PhotoDeduplication(GridFSBucket bucket, PhotoStores photoStores, MongoCollections mongoCollections) {
+        this.bucket = bucket;
+        this.photoStores = photoStores;
+        this.mongoCollections = mongoCollections;
+        this.hashIndex = Mono.defer(() -> Mono.from(filesCollection().createIndex(
+                        Indexes.ascending(SHA256),
+                        new IndexOptions().unique(true).partialFilterExpression(Filters.exists(SHA256)))))
+                .cache(name -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * Records the digest of a just uploaded file. If the same content is already stored, its reference count is
+     * incremented, the new copy deleted and the existing id emitted, otherwise the uploaded id is emitted.
+     */
+    public Mono<ObjectId> deduplicate(ObjectId uploaded, String sha256) {
+        var files = filesCollection();
+        return hashIndex
+                .then(Mono.from(files.updateOne(
+                        Filters.eq("_id", uploaded),
+                        Updates.combine(Updates.set(SHA256, sha256), Updates.set(REF_COUNT, 1)))))
+                .thenReturn(uploaded)
+                .onErrorResume(
+                        error -> error instanceof MongoWriteException e && e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY,
+                        error -> Mono.from(files.findOneAndUpdate(
+                                        Filters.and(Filters.eq(SHA256, sha256), Filters.gte(REF_COUNT, 1)),
+                                        Updates.inc(REF_COUNT, 1)))
+                                .map(existing -> existing.getObjectId("_id").getValue())
+                                .flatMap(existing -> Mono.from(this.bucket.find(Filters.eq("_id", uploaded)).first())
+                                        .flatMap(copy -> this.photoStores.forFile(copy).delete(copy))
+                                        .doOnSuccess(v -> log.debug("photo {} duplicates {}, removed the new copy", uploaded, existing))
+                                        .thenReturn(existing))
+                                // the existing copy was released meanwhile and its hash freed, claim it again
+                                .switchIfEmpty(Mono.defer(() -> deduplicate(uploaded, sha256)))
+                );
+    }
+
+    /**
+     * Drops one reference to a photo, emits {@code true} when it was the last one and the bytes can be deleted.
+     * The count is decremented in one update that also frees the hash once it reaches zero, so a concurrent upload
+     * of the same content never picks a copy that is about to be deleted. Files stored before deduplication have no
+     * reference count and are always released.
+     */
+    public Mono<Boolean> release(ObjectId id) {
+        var files = filesCollection();
+        return Mono.from(files.findOneAndUpdate(
+                        Filters.and(Filters.eq("_id", id), Filters.gt(REF_COUNT, 0)),
+                        RELEASE,
+                        new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)))
+                .map(released -> released.getDocument("metadata").getNumber("refCount").intValue() <= 0)
+                .switchIfEmpty(Mono.defer(() -> Mono.from(files.countDocuments(
+                                Filters.and(Filters.eq("_id", id), Filters.exists(REF_COUNT, false))))
+                        .map(legacy -> legacy > 0)));
+    }
+
+    private MongoCollection<BsonDocument> filesCollection() {
+        return mongoCollections.get("photos", "fs.files", BsonDocument.class);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Mono;
+
+/**
+ * Deletes a photo: drops one reference to its content and, with the last one, removes the original and its
+ * derivatives from their stores.
+ */
+@Singleton
+@RequiredArgsConstructor
+public class PhotoDeletion {
+    private final GridFSBucket bucket;
+    private final PhotoStores photoStores;
+    private final PhotoDerivatives derivatives;
+    private final PhotoDeduplication deduplication;
+    private final PhotoCache photoCache;
+    private final StorageStatsService storageStats;
+
+    /**
+     * Emits {@code true} if the content was removed, {@code false} if other references keep it, completes empty
+     * if there is no such photo.
+     */
+    public Mono<Boolean> delete(ObjectId id) {
+        return Mono.from(this.bucket.find(Filters.eq("_id", id)).first())
+                .flatMap(file -> this.deduplication.release(id)
+                        .flatMap(last -> !last
+                                ? Mono.just(false)
+                                : this.derivatives.findAll(id)
+                                .concatMap(this::deleteContent)
+                                .then(deleteContent(file))
+                                .then(this.storageStats.photoDeleted(file))
+                                .thenReturn(true)))
+                .doFinally(signal -> this.photoCache.invalidate(id));
+    }
+
+    private Mono<Void> deleteContent(GridFSFile file) {
+        return this.photoStores.forFile(file).delete(file);
+    }
+}
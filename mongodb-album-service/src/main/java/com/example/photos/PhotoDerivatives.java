@@ -0,0 +1,164 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.imageio.ImageIO;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates resized variants of uploaded images with {@link ImageIO} and stores them in the current {@link PhotoStore},
+ * linked to the original through {@code metadata.derivativeOf} and {@code metadata.variant}.
+ * <p>
+ * Work runs on a fixed pool behind a bounded queue. When the queue is full the upload is not slowed down,
+ * the derivatives for that photo are skipped and downloads fall back to the original.
+ */
+@Singleton
+@Slf4j
+public class PhotoDerivatives {
+    static final String DERIVATIVE_OF = "metadata.derivativeOf";
+    static final String VARIANT = "metadata.variant";
+
+    private final GridFSBucket bucket;
+    private final PhotoStores photoStores;
+    private final GridFSProperties gridFSProperties;
+    private final DerivativeProperties properties;
+    private final ThreadPoolExecutor executor;
+
+    public PhotoDerivatives(GridFSBucket bucket, PhotoStores photoStores, GridFSProperties gridFSProperties, DerivativeProperties properties) {
+        this.bucket = bucket;
+        this.photoStores = photoStores;
+        this.gridFSProperties = gridFSProperties;
+        this.properties = properties;
+        var threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                properties.parallelism(),
+                properties.parallelism(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.queueCapacity()),
+                runnable -> {
+                    var thread = new Thread(runnable, "photo-derivatives-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Queues derivative generation for an uploaded photo, returns {@code false} if it was not queued.
+     */
+    public boolean submit(ObjectId id, String contentType) {
+        if (!properties.enabled() || contentType == null || !contentType.startsWith("image/")) {
+            return false;
+        }
+        try {
+            executor.execute(() -> generate(id, contentType));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("derivative queue is full, skipping variants of photo {}", id);
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the stored variant of a photo, empty if it does not exist (yet).
+     */
+    public Mono<GridFSFile> find(ObjectId id, String variant) {
+        return Mono.from(bucket.find(Filters.and(Filters.eq(DERIVATIVE_OF, id), Filters.eq(VARIANT, variant))).first());
+    }
+
+    public Flux<GridFSFile> findAll(ObjectId id) {
+        return Flux.from(bucket.find(Filters.eq(DERIVATIVE_OF, id)));
+    }
+
+    private void generate(ObjectId id, String contentType) {
+        try {
+            var file = Mono.from(bucket.find(Filters.eq("_id", id)).first()).block();
+            if (file == null || file.getLength() > properties.maxSourceBytes()) {
+                return;
+            }
+            var original = photoStores.forFile(file).read(file, ByteRange.full(file.getLength()))
+                    .reduce(new ByteArrayOutputStream((int) file.getLength()), (out, buffer) -> {
+                        var bytes = new byte[buffer.remaining()];
+                        buffer.get(bytes);
+                        out.writeBytes(bytes);
+                        return out;
+                    })
+                    .block();
+            var image = ImageIO.read(new ByteArrayInputStream(original.toByteArray()));
+            if (image == null) {
+                log.debug("photo {} is not a readable image, no variants generated", id);
+                return;
+            }
+            var format = contentType.equals("image/png") ? "png" : "jpeg";
+            for (var variant : properties.variants().entrySet()) {
+                var resized = resize(image, variant.getValue(), format);
+                if (resized == null) {
+                    continue;
+                }
+                var out = new ByteArrayOutputStream();
+                ImageIO.write(resized, format, out);
+                var metadata = new Document("contentType", "image/" + format)
+                        .append("derivativeOf", id)
+                        .append("variant", variant.getKey())
+                        .append("width", resized.getWidth())
+                        .append("height", resized.getHeight());
+                var variantId = photoStores.writer()
+                        .write(variant.getKey() + "-" + file.getFilename(),
+                                Mono.just(new ByteArrayInputStream(out.toByteArray())),
+                                gridFSProperties.chunkSizeFor(out.size()),
+                                () -> metadata,
+                                null)
+                        .block();
+                log.debug("stored variant {} of photo {} as {}", variant.getKey(), id, variantId);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("failed to generate variants of photo {}: {}", id, e.getMessage());
+        }
+    }
+
+    // null when the image already fits, variants are never upscaled
+    private static BufferedImage resize(BufferedImage image, int maxSize, String format) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width <= maxSize && height <= maxSize) {
+            return null;
+        }
+        double scale = Math.min((double) maxSize / width, (double) maxSize / height);
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        int type = format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        var resized = new BufferedImage(targetWidth, targetHeight, type);
+        var graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
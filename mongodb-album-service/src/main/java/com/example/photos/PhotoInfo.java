@@ -1,6 +1,25 @@
 package com.example.photos;
 
+import com.mongodb.client.gridfs.model.GridFSFile;
+
 import java.util.Date;
 
-public record PhotoInfo(String id, String filename, int chunkSize, long length, Date uploadedDate, String contentType) {
+public record PhotoInfo(String id, String filename, int chunkSize, long length, Date uploadedDate, String contentType,
+                        Integer width, Integer height, Integer orientation, Date takenAt) {
+
+    public static PhotoInfo of(GridFSFile file) {
+        var metadata = file.getMetadata();
+        return new PhotoInfo(
+                file.getObjectId().toHexString(),
+                file.getFilename(),
+                file.getChunkSize(),
+                file.getLength(),
+                file.getUploadDate(),
+                metadata == null ? null : metadata.getString("contentType"),
+                metadata == null ? null : metadata.getInteger(ImageHeader.WIDTH),
+                metadata == null ? null : metadata.getInteger(ImageHeader.HEIGHT),
+                metadata == null ? null : metadata.getInteger(ImageHeader.ORIENTATION),
+                metadata == null ? null : metadata.getDate(ImageHeader.TAKEN_AT)
+        );
+    }
 }
@@ -0,0 +1,40 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import jakarta.inject.Singleton;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Resolves the {@link PhotoInfo} of many photo ids with one {@code fs.files} {@code $in} query per
+ * {@link #IN_CHUNK} ids, emitted in the order of the given ids. Ids of missing or malformed photos, and nulls, are skipped.
+ */
+@Singleton
+@RequiredArgsConstructor
+public class PhotoInfoResolver {
+    static final int IN_CHUNK = 1000;
+
+    private final GridFSBucket bucket;
+
+    public Flux<PhotoInfo> resolve(List<String> photoIds) {
+        return resolveFiles(photoIds).map(PhotoInfo::of);
+    }
+
+    public Flux<GridFSFile> resolveFiles(List<String> photoIds) {
+        if (photoIds == null) {
+            return Flux.empty();
+        }
+        // albums may hold null entries, neither Flux.fromIterable nor ObjectId.isValid accept them
+        return Flux.fromIterable(photoIds.stream().filter(Objects::nonNull).filter(ObjectId::isValid).map(ObjectId::new).toList())
+                .buffer(IN_CHUNK)
+                .concatMap(ids -> Flux.from(this.bucket.find(Filters.in("_id", ids)).batchSize(ids.size()))
+                        .collectMap(GridFSFile::getObjectId)
+                        .flatMapIterable(files -> ids.stream().map(files::get).filter(Objects::nonNull).toList()));
+    }
+}
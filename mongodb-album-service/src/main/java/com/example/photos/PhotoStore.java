@@ -0,0 +1,37 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.function.Supplier;
+
+/**
+ * Where the bytes of a photo live. Photo metadata is always an {@code fs.files} document, so ids, listings and
+ * lookups are the same for every store, {@code metadata.store} names the store holding the content.
+ */
+public interface PhotoStore {
+    String STORE = "store";
+
+    String name();
+
+    /**
+     * Stores the content as a new photo and emits its id. Every stream is consumed and closed in order,
+     * the digest, if given, is updated with every byte stored. The metadata is asked for once, after the last
+     * stream has been read to its end, so it may hold values computed while the content was read.
+     */
+    Mono<ObjectId> write(String filename, Publisher<? extends InputStream> content, int chunkSize, Supplier<Document> metadata, MessageDigest digest);
+
+    Flux<ByteBuffer> read(GridFSFile file, ByteRange range);
+
+    /**
+     * Removes the photo document and its content.
+     */
+    Mono<Void> delete(GridFSFile file);
+}
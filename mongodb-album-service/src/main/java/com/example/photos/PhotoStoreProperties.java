@@ -0,0 +1,15 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * The {@link PhotoStore} new photos are written to, {@code gridfs} or {@code local}. Content of the local store
+ * is kept under {@code localRoot}.
+ */
+@ConfigurationProperties("photos.store")
+public record PhotoStoreProperties(
+        @Bindable(defaultValue = GridFSPhotoStore.NAME) String type,
+        @Bindable(defaultValue = "photo-store") String localRoot
+) {
+}
@@ -0,0 +1,37 @@
+package com.example.photos;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import jakarta.inject.Singleton;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Picks the {@link PhotoStore} new photos are written to ({@code photos.store.type}) and the one holding the
+ * content of an existing photo ({@code metadata.store}), so photos stay readable after switching stores.
+ */
+@Singleton
+public class PhotoStores {
+    private final Map<String, PhotoStore> stores;
+    private final PhotoStore writer;
+
+    public PhotoStores(List<PhotoStore> stores, PhotoStoreProperties properties) {
+        this.stores = stores.stream().collect(Collectors.toMap(PhotoStore::name, Function.identity()));
+        this.writer = this.stores.get(properties.type());
+        if (this.writer == null) {
+            throw new IllegalArgumentException("unknown photo store: " + properties.type() + ", expected one of " + this.stores.keySet());
+        }
+    }
+
+    public PhotoStore writer() {
+        return writer;
+    }
+
+    public PhotoStore forFile(GridFSFile file) {
+        var metadata = file.getMetadata();
+        var name = metadata == null ? GridFSPhotoStore.NAME : metadata.getString(PhotoStore.STORE);
+        return stores.getOrDefault(name == null ? GridFSPhotoStore.NAME : name, stores.get(GridFSPhotoStore.NAME));
+    }
+}
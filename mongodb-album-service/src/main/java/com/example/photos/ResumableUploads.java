@@ -0,0 +1,271 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resumable uploads written straight into GridFS. A session pre-allocates the file id, every full chunk is stored
+ * in {@code fs.chunks} as soon as it is complete and checkpointed in the session, the bytes of an incomplete last
+ * chunk are kept in the session ({@code tail}) until more data arrives. Finalizing writes the last chunk and the
+ * {@code fs.files} document, the received chunks are never copied.
+ * <p>
+ * The session carries the CRC-32 of the stored chunks ({@code crc32}), continued chunk by chunk across requests, so
+ * finalizing records the CRC like a single request upload without reading the content again. Image headers are
+ * parsed from the first chunks when finalizing. Sessions created before the CRC was tracked finish without one.
+ */
+@Singleton
+@Slf4j
+public class ResumableUploads {
+    private static final Binary EMPTY = new Binary(new byte[0]);
+    private static final String CRC = "crc32";
+    // sessions created before the CRC was tracked
+    private static final long NO_CRC = -1;
+    private static final long[] CRC_TABLE = crcTable();
+
+    private final MongoCollections mongoCollections;
+    private final GridFSProperties gridFSProperties;
+    private final UploadProperties uploadProperties;
+    private final PhotoDerivatives derivatives;
+    private final GridFSChunkWriter chunkWriter;
+    private final StorageStatsService storageStats;
+    private final Mono<Void> indexes;
+
+    public ResumableUploads(MongoCollections mongoCollections,
+                            GridFSProperties gridFSProperties,
+                            UploadProperties uploadProperties,
+                            PhotoDerivatives derivatives,
+                            GridFSChunkWriter chunkWriter,
+                            StorageStatsService storageStats) {
+        this.mongoCollections = mongoCollections;
+        this.gridFSProperties = gridFSProperties;
+        this.uploadProperties = uploadProperties;
+        this.derivatives = derivatives;
+        this.chunkWriter = chunkWriter;
+        this.storageStats = storageStats;
+        // chunks are upserted by (files_id, n) before GridFS itself may have created its index
+        this.indexes = chunkWriter.ensureIndexes()
+                .then(Mono.defer(() -> Mono.from(sessionsCollection().createIndex(Indexes.ascending("updatedAt")))))
+                .then()
+                .cache(v -> Duration.ofMillis(Long.MAX_VALUE), error -> Duration.ZERO, () -> Duration.ofMillis(Long.MAX_VALUE));
+    }
+
+    public Mono<Document> create(CreateUploadSessionDto data) {
+        var now = new Date();
+        var session = new Document("_id", new ObjectId())
+                .append("fileId", new ObjectId())
+                .append("filename", data.filename())
+                .append("contentType", data.contentType())
+                .append("length", data.length())
+                .append("chunkSize", gridFSProperties.chunkSizeFor(data.length() == null ? 0 : data.length()))
+                .append("received", 0L)
+                .append("tail", EMPTY)
+                .append(CRC, 0L)
+                .append("createdAt", now)
+                .append("updatedAt", now);
+        return indexes
+                .then(Mono.from(sessionsCollection().insertOne(session)))
+                .thenReturn(session);
+    }
+
+    public Mono<Document> find(ObjectId id) {
+        return Mono.from(sessionsCollection().find(Filters.eq(id)).first());
+    }
+
+    /**
+     * Appends the body at {@code offset} and emits the new offset, or completes empty if there is no such session.
+     * Fails with {@link UploadOffsetMismatchException} when the offset is not where the session is.
+     */
+    public Mono<Long> append(ObjectId id, long offset, Publisher<byte[]> body) {
+        return find(id).flatMap(session -> {
+            long received = session.getLong("received");
+            if (offset != received) {
+                return Mono.error(new UploadOffsetMismatchException(received));
+            }
+            var fileId = session.getObjectId("fileId");
+            int chunkSize = session.getInteger("chunkSize");
+            var tail = session.get("tail", Binary.class).getData();
+            long firstChunk = received / chunkSize;
+            var current = new AtomicLong(received);
+            var crc = new AtomicLong(session.get(CRC, NO_CRC));
+            Flux<byte[]> data = Flux.concat(tail.length > 0 ? Flux.just(tail) : Flux.empty(), Flux.from(body));
+            return GridFSRechunkJob.resize(data, chunkSize)
+                    .index()
+                    .concatMap(indexed -> {
+                        long n = firstChunk + indexed.getT1();
+                        var bytes = indexed.getT2();
+                        if (bytes.length < chunkSize) {
+                            // only the last slice is short, keep it until the next append or finalize
+                            return checkpoint(id, current, n * chunkSize + bytes.length, bytes, crc.get());
+                        }
+                        return Mono.from(chunksCollection().replaceOne(
+                                        Filters.and(Filters.eq("files_id", fileId), Filters.eq("n", (int) n)),
+                                        GridFSChunkWriter.chunk(fileId, n, bytes),
+                                        new ReplaceOptions().upsert(true)))
+                                .then(Mono.defer(() -> checkpoint(id, current, (n + 1) * chunkSize, new byte[0],
+                                        crc.updateAndGet(value -> value == NO_CRC ? NO_CRC : crc(value, bytes)))));
+                    })
+                    .then(Mono.fromSupplier(current::get));
+        });
+    }
+
+    /**
+     * Writes the last chunk and the {@code fs.files} document, with the CRC-32 and image header like a single request
+     * upload, removes the session and emits the photo id.
+     */
+    public Mono<ObjectId> complete(ObjectId id) {
+        return find(id).flatMap(session -> {
+            long received = session.getLong("received");
+            var length = session.getLong("length");
+            if (length != null && length != received) {
+                return Mono.error(new UploadOffsetMismatchException(received));
+            }
+            var fileId = session.getObjectId("fileId");
+            int chunkSize = session.getInteger("chunkSize");
+            var tail = session.get("tail", Binary.class).getData();
+            Mono<?> lastChunk = tail.length == 0
+                    ? Mono.empty()
+                    : Mono.from(chunksCollection().replaceOne(
+                    Filters.and(Filters.eq("files_id", fileId), Filters.eq("n", (int) (received / chunkSize))),
+                    GridFSChunkWriter.chunk(fileId, received / chunkSize, tail),
+                    new ReplaceOptions().upsert(true)));
+            var contentType = session.getString("contentType");
+            var metadata = new Document();
+            if (contentType != null) {
+                metadata.append("contentType", contentType);
+            }
+            long crc = session.get(CRC, NO_CRC);
+            if (crc != NO_CRC) {
+                metadata.append(AlbumArchiver.CRC32, crc(crc, tail));
+            }
+            Mono<?> header = contentType == null || !contentType.startsWith("image/")
+                    ? Mono.empty()
+                    : header(fileId, chunkSize).doOnNext(image -> metadata.putAll(image.toMetadata()));
+            return lastChunk
+                    .then(header)
+                    .then(Mono.defer(() -> Mono.from(filesCollection().insertOne(new Document("_id", fileId)
+                            .append("length", received)
+                            .append("chunkSize", chunkSize)
+                            .append("uploadDate", new Date())
+                            .append("filename", session.getString("filename"))
+                            .append("metadata", metadata)))))
+                    .then(Mono.from(sessionsCollection().deleteOne(Filters.eq(id))))
+                    .then(Mono.defer(() -> this.storageStats.photoStored(fileId)))
+                    .doOnSuccess(v -> this.derivatives.submit(fileId, contentType))
+                    .thenReturn(fileId);
+        });
+    }
+
+    /**
+     * Removes the session and the chunks received so far, emits {@code false} if there was no such session.
+     */
+    public Mono<Boolean> abort(ObjectId id) {
+        return find(id)
+                .flatMap(session -> Mono.from(chunksCollection().deleteMany(Filters.eq("files_id", session.getObjectId("fileId"))))
+                        .then(Mono.from(sessionsCollection().deleteOne(Filters.eq(id))))
+                        .thenReturn(true))
+                .defaultIfEmpty(false);
+    }
+
+    @Scheduled(initialDelay = "5m", fixedDelay = "${photos.upload.sweep-interval:15m}")
+    void sweep() {
+        var cutoff = Date.from(Instant.now().minus(uploadProperties.sessionTtl()));
+        var swept = Flux.from(sessionsCollection().find(Filters.lt("updatedAt", cutoff)))
+                .concatMap(session -> abort(session.getObjectId("_id")))
+                .filter(aborted -> aborted)
+                .count()
+                .block();
+        log.debug("removed {} abandoned upload sessions", swept);
+    }
+
+    // parses the image header from the first chunks, the last chunk has been written by then
+    private Mono<ImageHeader> header(ObjectId fileId, int chunkSize) {
+        int chunks = (ImageHeaderCapture.LIMIT + chunkSize - 1) / chunkSize;
+        return Flux.from(chunksCollection().find(Filters.and(Filters.eq("files_id", fileId), Filters.lt("n", chunks)))
+                        .projection(Projections.include("data"))
+                        .sort(Sorts.ascending("n")))
+                .reduceWith(ByteArrayOutputStream::new, (head, chunk) -> {
+                    var data = chunk.get("data", Binary.class).getData();
+                    head.write(data, 0, Math.min(data.length, ImageHeaderCapture.LIMIT - head.size()));
+                    return head;
+                })
+                .map(head -> ImageHeader.parse(head.toByteArray(), head.size()));
+    }
+
+    private Mono<Long> checkpoint(ObjectId id, AtomicLong current, long received, byte[] tail, long crc) {
+        long expected = current.get();
+        var update = Updates.combine(
+                Updates.set("received", received),
+                Updates.set("tail", new Binary(tail)),
+                Updates.set("updatedAt", new Date()));
+        return Mono.from(sessionsCollection().updateOne(
+                        Filters.and(Filters.eq(id), Filters.eq("received", expected)),
+                        crc == NO_CRC ? update : Updates.combine(update, Updates.set(CRC, crc))))
+                .flatMap(result -> {
+                    if (result.getMatchedCount() == 0) {
+                        // another append moved the session meanwhile
+                        return find(id).map(session -> session.getLong("received"))
+                                .defaultIfEmpty(expected)
+                                .flatMap(actual -> Mono.<Long>error(new UploadOffsetMismatchException(actual)));
+                    }
+                    current.set(received);
+                    return Mono.just(received);
+                });
+    }
+
+    /**
+     * Continues a CRC-32 over more bytes. {@link java.util.zip.CRC32} cannot start from a stored value, this gives
+     * the same result as one CRC32 over all of the bytes.
+     */
+    static long crc(long crc, byte[] bytes) {
+        long c = ~crc & 0xffffffffL;
+        for (byte b : bytes) {
+            c = CRC_TABLE[(int) ((c ^ b) & 0xff)] ^ (c >>> 8);
+        }
+        return ~c & 0xffffffffL;
+    }
+
+    private static long[] crcTable() {
+        var table = new long[256];
+        for (int n = 0; n < 256; n++) {
+            long c = n;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? 0xedb88320L ^ (c >>> 1) : c >>> 1;
+            }
+            table[n] = c;
+        }
+        return table;
+    }
+
+    private MongoCollection<Document> sessionsCollection() {
+        return mongoCollections.get("photos", "upload_sessions", Document.class);
+    }
+
+    private MongoCollection<Document> filesCollection() {
+        return mongoCollections.get("photos", "fs.files", Document.class);
+    }
+
+    private MongoCollection<Document> chunksCollection() {
+        return mongoCollections.get("photos", "fs.chunks", Document.class);
+    }
+}
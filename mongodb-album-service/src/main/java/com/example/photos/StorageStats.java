@@ -0,0 +1,29 @@
+package com.example.photos;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Photo count and stored bytes, in total and per content type.
+ */
+public record StorageStats(long photos, long bytes, Map<String, Usage> contentTypes) {
+    public static final StorageStats EMPTY = new StorageStats(0, 0, Map.of());
+
+    public record Usage(long photos, long bytes) {
+    }
+
+    /**
+     * A copy with the photos added, negative counts remove them, content types left without photos are dropped.
+     */
+    public StorageStats plus(String contentType, long photos, long bytes) {
+        var types = new HashMap<>(contentTypes);
+        var usage = types.getOrDefault(contentType, new Usage(0, 0));
+        var updated = new Usage(usage.photos() + photos, usage.bytes() + bytes);
+        if (updated.photos() <= 0) {
+            types.remove(contentType);
+        } else {
+            types.put(contentType, updated);
+        }
+        return new StorageStats(Math.max(0, this.photos + photos), Math.max(0, this.bytes + bytes), Map.copyOf(types));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
+
+/**
+ * Storage statistics are recomputed at most every {@code ttl}, for up to {@code maxAlbums} albums at a time.
+ */
+@ConfigurationProperties("photos.stats")
+public record StorageStatsProperties(
+        @Bindable(defaultValue = "5m") Duration ttl,
+        @Bindable(defaultValue = "10000") long maxAlbums
+) {
+}
@@ -0,0 +1,157 @@
+package com.example.photos;
+
+import com.example.MongoCollections;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UnwindOptions;
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket;
+import io.micronaut.http.MediaType;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Photo count and stored bytes per album and for all photos, computed with aggregation pipelines: album photo
+ * ids are joined against {@code fs.files} with {@code $lookup} and grouped by content type on the server.
+ * <p>
+ * Results are cached for {@code photos.stats.ttl}. The global figures are adjusted in place when a photo is
+ * stored or deleted, album figures are dropped when the album's photos change and recomputed on the next read.
+ * Derivatives are not counted, a photo shared by several albums counts for each of them.
+ */
+@Singleton
+@Slf4j
+public class StorageStatsService {
+    private static final String GLOBAL = "global";
+
+    private final MongoCollections mongoCollections;
+    private final GridFSBucket bucket;
+    private final AlbumRepository albumRepository;
+    private final Cache<ObjectId, StorageStats> albums;
+    private final Cache<String, StorageStats> global;
+
+    public StorageStatsService(MongoCollections mongoCollections,
+                               GridFSBucket bucket,
+                               AlbumRepository albumRepository,
+                               StorageStatsProperties properties) {
+        this.mongoCollections = mongoCollections;
+        this.bucket = bucket;
+        this.albumRepository = albumRepository;
+        this.albums = Caffeine.newBuilder()
+                .expireAfterWrite(properties.ttl())
+                .maximumSize(properties.maxAlbums())
+                .build();
+        this.global = Caffeine.newBuilder()
+                .expireAfterWrite(properties.ttl())
+                .build();
+    }
+
+    /**
+     * Stats of an album, empty if the album does not exist.
+     */
+    public Mono<StorageStats> album(ObjectId id) {
+        var cached = albums.getIfPresent(id);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        var albumsCollection = mongoCollections.get("photos", "albums", Document.class);
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.eq("_id", id)),
+                // album photos are id strings, ids that are not object ids join nothing
+                Aggregates.project(new Document("photoIds", new Document("$map", new Document("input", new Document("$ifNull", List.of("$photos", List.of())))
+                        .append("as", "photo")
+                        .append("in", new Document("$convert", new Document("input", "$$photo").append("to", "objectId").append("onError", null).append("onNull", null)))))),
+                new Document("$lookup", new Document("from", "fs.files")
+                        .append("localField", "photoIds")
+                        .append("foreignField", "_id")
+                        .append("pipeline", List.of(Aggregates.project(Projections.include("length", "metadata.contentType"))))
+                        .append("as", "files")),
+                Aggregates.unwind("$files", new UnwindOptions().preserveNullAndEmptyArrays(true)),
+                Aggregates.group("$files.metadata.contentType",
+                        Accumulators.sum("photos", new Document("$cond", List.of(new Document("$ifNull", List.of("$files", false)), 1, 0))),
+                        Accumulators.sum("bytes", new Document("$ifNull", List.of("$files.length", 0))))
+        );
+        return Flux.from(albumsCollection.aggregate(pipeline))
+                .collectList()
+                // an existing album always yields a group, one without photos a group with zero photos
+                .filter(groups -> !groups.isEmpty())
+                .map(StorageStatsService::fold)
+                .doOnNext(stats -> albums.put(id, stats));
+    }
+
+    public Mono<StorageStats> global() {
+        var cached = global.getIfPresent(GLOBAL);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        List<Bson> pipeline = List.of(
+                Aggregates.match(Filters.exists(PhotoDerivatives.DERIVATIVE_OF, false)),
+                Aggregates.group("$metadata.contentType",
+                        Accumulators.sum("photos", 1),
+                        Accumulators.sum("bytes", "$length"))
+        );
+        return Flux.from(mongoCollections.get("photos", "fs.files", Document.class).aggregate(pipeline))
+                .collectList()
+                .map(StorageStatsService::fold)
+                .doOnNext(stats -> global.put(GLOBAL, stats));
+    }
+
+    /**
+     * Counts a newly stored original in the cached global stats.
+     */
+    public Mono<Void> photoStored(ObjectId id) {
+        if (global.getIfPresent(GLOBAL) == null) {
+            return Mono.empty();
+        }
+        return Mono.from(bucket.find(Filters.eq("_id", id)).first())
+                .doOnNext(file -> adjustGlobal(file, 1))
+                .then();
+    }
+
+    /**
+     * Removes a deleted original from the cached global stats and drops the stats of albums containing it.
+     */
+    public Mono<Void> photoDeleted(GridFSFile file) {
+        adjustGlobal(file, -1);
+        return albumRepository.findByPhoto(file.getObjectId().toHexString(), null, 0)
+                .doOnNext(album -> albums.invalidate(album.id()))
+                .then();
+    }
+
+    public void albumChanged(ObjectId id) {
+        albums.invalidate(id);
+    }
+
+    private void adjustGlobal(GridFSFile file, int photos) {
+        global.asMap().computeIfPresent(GLOBAL, (key, stats) -> stats.plus(contentType(file), photos, photos * file.getLength()));
+    }
+
+    private static String contentType(GridFSFile file) {
+        return Optional.ofNullable(file.getMetadata())
+                .map(metadata -> metadata.getString("contentType"))
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+    }
+
+    private static StorageStats fold(List<Document> groups) {
+        var stats = StorageStats.EMPTY;
+        for (var group : groups) {
+            long photos = ((Number) group.get("photos")).longValue();
+            if (photos > 0) {
+                var contentType = Optional.ofNullable(group.getString("_id")).orElse(MediaType.APPLICATION_OCTET_STREAM);
+                stats = stats.plus(contentType, photos, ((Number) group.get("bytes")).longValue());
+            }
+        }
+        return stats;
+    }
+}
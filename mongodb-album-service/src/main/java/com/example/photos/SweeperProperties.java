@@ -0,0 +1,16 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+/**
+ * The album reference sweeper checks {@code batchSize} albums per round trip and at most
+ * {@code albumsPerSecond} albums a second, scheduled runs are skipped unless {@code enabled}.
+ */
+@ConfigurationProperties("photos.sweeper")
+public record SweeperProperties(
+        @Bindable(defaultValue = "true") boolean enabled,
+        @Bindable(defaultValue = "500") int batchSize,
+        @Bindable(defaultValue = "1000") int albumsPerSecond
+) {
+}
@@ -0,0 +1,17 @@
+package com.example.photos;
+
+/**
+ * A resumable upload was sent from another offset than the one the session has received so far.
+ */
+public class UploadOffsetMismatchException extends RuntimeException {
+    private final long offset;
+
+    public UploadOffsetMismatchException(long offset) {
+        super("upload session is at offset " + offset);
+        this.offset = offset;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+}
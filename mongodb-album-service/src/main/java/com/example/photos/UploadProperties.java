@@ -0,0 +1,17 @@
+package com.example.photos;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import io.micronaut.core.bind.annotation.Bindable;
+
+import java.time.Duration;
+
+/**
+ * Photo uploads, {@code concurrency} caps the files of one batch upload written to GridFS at the same time.
+ * Resumable upload sessions without activity for {@code sessionTtl} are removed by the sweeper.
+ */
+@ConfigurationProperties("photos.upload")
+public record UploadProperties(
+        @Bindable(defaultValue = "4") int concurrency,
+        @Bindable(defaultValue = "24h") Duration sessionTtl
+) {
+}
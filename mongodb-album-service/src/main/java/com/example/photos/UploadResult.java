@@ -0,0 +1,15 @@
+package com.example.photos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UploadResult(String filename, String id, String error) {
+
+    public static UploadResult stored(String filename, String id) {
+        return new UploadResult(filename, id, null);
+    }
+
+    public static UploadResult failed(String filename, String error) {
+        return new UploadResult(filename, null, error);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.photos;
+
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.*;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.Map;
+
+import static io.micronaut.http.HttpResponse.*;
+
+/**
+ * Resumable uploads: {@code POST} creates a session, {@code PATCH} appends the body at the {@code Upload-Offset}
+ * header, {@code HEAD} reports the offset to resume from and {@code POST /{id}/complete} stores the photo.
+ */
+@Controller("/photos/uploads")
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionController {
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final ResumableUploads resumableUploads;
+
+    @Post(uri = "", consumes = {MediaType.APPLICATION_JSON})
+    public Mono<HttpResponse<?>> create(@Body CreateUploadSessionDto data) {
+        return this.resumableUploads.create(data)
+                .map(session -> {
+                    var id = session.getObjectId("_id").toHexString();
+                    return created(URI.create("/photos/uploads/" + id))
+                            .header(UPLOAD_OFFSET, "0")
+                            .body(Map.of("id", id, "chunkSize", session.getInteger("chunkSize")));
+                });
+    }
+
+    @Head(uri = "/{id}")
+    public Mono<MutableHttpResponse<?>> offset(@PathVariable ObjectId id) {
+        return this.resumableUploads.find(id)
+                .<MutableHttpResponse<?>>map(session -> ok().header(UPLOAD_OFFSET, String.valueOf(session.getLong("received"))))
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    @Patch(uri = "/{id}", consumes = {MediaType.APPLICATION_OCTET_STREAM})
+    public Mono<MutableHttpResponse<?>> append(@PathVariable ObjectId id,
+                                               @Header(UPLOAD_OFFSET) long offset,
+                                               @Body Publisher<byte[]> body) {
+        return this.resumableUploads.append(id, offset, body)
+                .<MutableHttpResponse<?>>map(received -> noContent().header(UPLOAD_OFFSET, String.valueOf(received)))
+                .onErrorResume(UploadOffsetMismatchException.class, e -> Mono.just(conflict(e)))
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    @Post(uri = "/{id}/complete")
+    public Mono<MutableHttpResponse<?>> complete(@PathVariable ObjectId id) {
+        return this.resumableUploads.complete(id)
+                .<MutableHttpResponse<?>>map(fileId -> ok(Map.of("id", fileId.toHexString())))
+                .onErrorResume(UploadOffsetMismatchException.class, e -> Mono.just(conflict(e)))
+                .switchIfEmpty(Mono.just(notFound()));
+    }
+
+    @Delete(uri = "/{id}")
+    public Mono<MutableHttpResponse<?>> abort(@PathVariable ObjectId id) {
+        return this.resumableUploads.abort(id)
+                .map(aborted -> aborted ? noContent() : notFound());
+    }
+
+    private static MutableHttpResponse<?> conflict(UploadOffsetMismatchException e) {
+        return status(HttpStatus.CONFLICT)
+                .header(UPLOAD_OFFSET, String.valueOf(e.getOffset()));
+    }
+}
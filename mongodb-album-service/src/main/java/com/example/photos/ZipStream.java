@@ -0,0 +1,258 @@
+package com.example.photos;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a ZIP archive of STORED entries as a sequence of buffers, entry content is passed through untouched.
+ * The size of an entry is known up front. Its CRC-32, recorded at upload, goes into the local header, so the
+ * archive reads with {@code ZipInputStream} too. Only for content without a recorded CRC the data descriptor flag
+ * is set and the CRC computed while the content passes follows it. Zip64 records are written only where a size or
+ * offset exceeds the 32 bit fields.
+ * <p>
+ * Not thread safe, calls must follow the archive order: {@code startEntry}, {@code data}..., {@code endEntry}
+ * for every entry, then {@code centralDirectory}.
+ */
+final class ZipStream {
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP16_LIMIT = 0xFFFF;
+    // names are UTF-8, the data descriptor follows the content if the CRC was not known up front
+    private static final short UTF8 = (short) (1 << 11);
+    private static final short DESCRIPTOR = (short) (1 << 3);
+    private static final short VERSION = 20;
+    private static final short VERSION_ZIP64 = 45;
+
+    private final long zip32Limit;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final CRC32 crc = new CRC32();
+    private long offset;
+    private Entry current;
+    private long written;
+
+    private final class Entry {
+        private final byte[] name;
+        private final long size;
+        private final long offset;
+        private final short time;
+        private final short date;
+        private final Long expectedCrc;
+        private long crc;
+
+        private Entry(byte[] name, long size, long offset, short time, short date, Long expectedCrc) {
+            this.name = name;
+            this.size = size;
+            this.offset = offset;
+            this.time = time;
+            this.date = date;
+            this.expectedCrc = expectedCrc;
+        }
+
+        short flags() {
+            return expectedCrc == null ? (short) (UTF8 | DESCRIPTOR) : UTF8;
+        }
+
+        boolean zip64Size() {
+            return size >= zip32Limit;
+        }
+
+        boolean zip64Offset() {
+            return offset >= zip32Limit;
+        }
+    }
+
+    ZipStream() {
+        this(ZIP32_LIMIT);
+    }
+
+    // a lower limit writes Zip64 records for small archives, for tests
+    ZipStream(long zip32Limit) {
+        this.zip32Limit = zip32Limit;
+    }
+
+    /**
+     * The local header of the next entry. A name used before gets {@code suffix} appended before its extension.
+     * {@code crc} is the CRC-32 of the content if known, {@code null} if it has to follow the content.
+     */
+    ByteBuffer startEntry(String name, String suffix, long size, Date modified, Long crc) {
+        var entryName = unique(name.replace('/', '_').replace('\\', '_'), suffix).getBytes(StandardCharsets.UTF_8);
+        var dateTime = LocalDateTime.ofInstant((modified == null ? new Date() : modified).toInstant(), ZoneId.systemDefault());
+        if (dateTime.getYear() < 1980) {
+            dateTime = LocalDateTime.of(1980, 1, 1, 0, 0);
+        }
+        short time = (short) (dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() / 2);
+        short date = (short) ((dateTime.getYear() - 1980) << 9 | dateTime.getMonthValue() << 5 | dateTime.getDayOfMonth());
+        current = new Entry(entryName, size, offset, time, date, crc);
+        this.crc.reset();
+        written = 0;
+
+        boolean zip64 = current.zip64Size();
+        var header = buffer(30 + entryName.length + (zip64 ? 20 : 0))
+                .putInt(0x04034b50)
+                .putShort(zip64 ? VERSION_ZIP64 : VERSION)
+                .putShort(current.flags())
+                .putShort((short) 0)
+                .putShort(time)
+                .putShort(date)
+                .putInt(crc == null ? 0 : crc.intValue())
+                .putInt(zip64 ? -1 : (int) size)
+                .putInt(zip64 ? -1 : (int) size)
+                .putShort((short) entryName.length)
+                .putShort((short) (zip64 ? 20 : 0))
+                .put(entryName);
+        if (zip64) {
+            header.putShort((short) 0x0001).putShort((short) 16).putLong(size).putLong(size);
+        }
+        return emit(header);
+    }
+
+    /**
+     * Passes content of the current entry through, updating its CRC-32.
+     */
+    ByteBuffer data(ByteBuffer content) {
+        crc.update(content.duplicate());
+        written += content.remaining();
+        offset += content.remaining();
+        return content;
+    }
+
+    /**
+     * The data descriptor of the current entry, empty if its CRC was known up front. Fails if the content did not
+     * match the declared size or CRC.
+     */
+    ByteBuffer endEntry() {
+        var name = current.name;
+        if (written != current.size) {
+            throw new IllegalStateException("entry " + new String(name, StandardCharsets.UTF_8)
+                    + " declared " + current.size + " bytes but had " + written);
+        }
+        current.crc = crc.getValue();
+        if (current.expectedCrc != null && current.expectedCrc != current.crc) {
+            throw new IllegalStateException("entry " + new String(name, StandardCharsets.UTF_8)
+                    + " does not match its recorded CRC-32");
+        }
+        entries.add(current);
+        if (current.expectedCrc != null) {
+            current = null;
+            return emit(buffer(0));
+        }
+        boolean zip64 = current.zip64Size();
+        var descriptor = buffer(zip64 ? 24 : 16)
+                .putInt(0x08074b50)
+                .putInt((int) current.crc);
+        if (zip64) {
+            descriptor.putLong(current.size).putLong(current.size);
+        } else {
+            descriptor.putInt((int) current.size).putInt((int) current.size);
+        }
+        current = null;
+        return emit(descriptor);
+    }
+
+    /**
+     * The central directory, one buffer per entry, and the end of central directory records.
+     */
+    List<ByteBuffer> centralDirectory() {
+        long start = offset;
+        List<ByteBuffer> buffers = new ArrayList<>(entries.size() + 1);
+        for (var entry : entries) {
+            buffers.add(emit(centralEntry(entry)));
+        }
+        buffers.add(emit(end(start, offset - start)));
+        return buffers;
+    }
+
+    private ByteBuffer centralEntry(Entry entry) {
+        int extra = (entry.zip64Size() ? 16 : 0) + (entry.zip64Offset() ? 8 : 0);
+        boolean zip64 = extra > 0;
+        var header = buffer(46 + entry.name.length + (zip64 ? 4 + extra : 0))
+                .putInt(0x02014b50)
+                .putShort(VERSION_ZIP64)
+                .putShort(zip64 ? VERSION_ZIP64 : VERSION)
+                .putShort(entry.flags())
+                .putShort((short) 0)
+                .putShort(entry.time)
+                .putShort(entry.date)
+                .putInt((int) entry.crc)
+                .putInt(entry.zip64Size() ? -1 : (int) entry.size)
+                .putInt(entry.zip64Size() ? -1 : (int) entry.size)
+                .putShort((short) entry.name.length)
+                .putShort((short) (zip64 ? 4 + extra : 0))
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt(entry.zip64Offset() ? -1 : (int) entry.offset)
+                .put(entry.name);
+        if (zip64) {
+            header.putShort((short) 0x0001).putShort((short) extra);
+            if (entry.zip64Size()) {
+                header.putLong(entry.size).putLong(entry.size);
+            }
+            if (entry.zip64Offset()) {
+                header.putLong(entry.offset);
+            }
+        }
+        return header;
+    }
+
+    private ByteBuffer end(long directoryOffset, long directorySize) {
+        boolean zip64 = entries.size() >= ZIP16_LIMIT || directoryOffset >= zip32Limit || directorySize >= zip32Limit;
+        var end = buffer((zip64 ? 56 + 20 : 0) + 22);
+        if (zip64) {
+            long zip64End = directoryOffset + directorySize;
+            end.putInt(0x06064b50)
+                    .putLong(44)
+                    .putShort(VERSION_ZIP64)
+                    .putShort(VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entries.size())
+                    .putLong(entries.size())
+                    .putLong(directorySize)
+                    .putLong(directoryOffset);
+            end.putInt(0x07064b50)
+                    .putInt(0)
+                    .putLong(zip64End)
+                    .putInt(1);
+        }
+        short count = (short) Math.min(entries.size(), ZIP16_LIMIT);
+        return end.putInt(0x06054b50)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort(count)
+                .putShort(count)
+                .putInt(zip64 ? -1 : (int) directorySize)
+                .putInt(zip64 ? -1 : (int) directoryOffset)
+                .putShort((short) 0);
+    }
+
+    private String unique(String name, String suffix) {
+        if (names.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        var renamed = dot > 0 ? name.substring(0, dot) + "-" + suffix + name.substring(dot) : name + "-" + suffix;
+        names.add(renamed);
+        return renamed;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private ByteBuffer emit(ByteBuffer buffer) {
+        buffer.flip();
+        offset += buffer.remaining();
+        return buffer;
+    }
+}
@@ -2,14 +2,22 @@ package com.example
 
 
 import com.example.photos.Album
+import com.example.photos.AlbumDeletionJobs
+import com.example.photos.AlbumReferenceSweeper
 import com.example.photos.AlbumRepository
+import com.mongodb.client.model.Filters
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket
 import groovy.util.logging.Slf4j
 import io.micronaut.runtime.EmbeddedApplication
 import io.micronaut.test.extensions.spock.annotation.MicronautTest
 import jakarta.inject.Inject
+import org.bson.types.ObjectId
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
 import reactor.test.StepVerifier
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
 import java.time.Duration
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
@@ -24,6 +32,15 @@ class AlbumRepositorySpec extends Specification {
     @Inject
     AlbumRepository albumRepository
 
+    @Inject
+    AlbumReferenceSweeper referenceSweeper
+
+    @Inject
+    AlbumDeletionJobs deletionJobs
+
+    @Inject
+    GridFSBucket bucket
+
     def setup() {
         CountDownLatch latch = new CountDownLatch(1)
         albumRepository.deleteAll()
@@ -52,4 +69,134 @@ class AlbumRepositorySpec extends Specification {
                 .expectComplete()
                 .verify()
     }
+
+    void 'test findSummaries counts photos without loading them'() {
+        given:
+        def id = this.albumRepository.insertOne(Album.of("Hangzhou")).block(Duration.ofMillis(5000))
+        this.albumRepository.addPhotos(id, ["a", "b", "c"]).block(Duration.ofMillis(5000))
+        this.albumRepository.insertOne(Album.of("Chengdu")).block(Duration.ofMillis(5000))
+
+        when:
+        def result = this.albumRepository.findSummaries(null, 10)
+
+        then:
+        StepVerifier.create(result)
+                .expectNextMatches(it -> it.id() == id && it.name() == "Hangzhou" && it.photoCount() == 3 && it.createdAt() != null)
+                .expectNextMatches(it -> it.name() == "Chengdu" && it.photoCount() == 0)
+                .expectComplete()
+                .verify()
+    }
+
+    void 'test addPhotos and removePhotos'() {
+        given:
+        def id = this.albumRepository.insertOne(Album.of("Beijing")).block(Duration.ofMillis(5000))
+
+        when:
+        def added = this.albumRepository.addPhotos(id, ["a", "b", "c"])
+        def addedAgain = this.albumRepository.addPhotos(id, ["a", "b"])
+        def removed = this.albumRepository.removePhotos(id, ["b", "c", "d"])
+
+        then:
+        StepVerifier.create(added).expectNext(1L).expectComplete().verify()
+        StepVerifier.create(addedAgain).expectNext(0L).expectComplete().verify()
+        StepVerifier.create(removed).expectNext(1L).expectComplete().verify()
+        StepVerifier.create(this.albumRepository.findById(id))
+                .expectNextMatches(it -> it.photos == ["a"])
+                .expectComplete()
+                .verify()
+    }
+
+    void 'test addPhotos to none-existing album'() {
+        when:
+        def result = this.albumRepository.addPhotos(ObjectId.get(), ["a"])
+
+        then:
+        StepVerifier.create(result)
+                .expectComplete()
+                .verify()
+    }
+
+    void 'test concurrent addPhotos does not lose updates'() {
+        given:
+        def id = this.albumRepository.insertOne(Album.of("Shenzhen")).block(Duration.ofMillis(5000))
+        def writers = 20
+        def photosPerWriter = 10
+
+        when:
+        Flux.range(0, writers)
+                .flatMap(w -> this.albumRepository.addPhotos(id, (0..<photosPerWriter).collect { "w$w-p$it".toString() }), writers)
+                .blockLast(Duration.ofMillis(10000))
+
+        then:
+        StepVerifier.create(this.albumRepository.findById(id))
+                .expectNextMatches(it -> it.photos.size() == writers * photosPerWriter)
+                .expectComplete()
+                .verify()
+    }
+
+    void 'test sweeper removes ids of photos that are not stored'() {
+        given:
+        def id = this.albumRepository.insertOne(Album.of("Wuhan")).block(Duration.ofMillis(5000))
+        def deleted = ObjectId.get().toHexString()
+        this.albumRepository.addPhotos(id, ["a", deleted]).block(Duration.ofMillis(5000))
+
+        when:
+        def removed = this.referenceSweeper.sweep().block(Duration.ofMillis(10000))
+
+        then:
+        removed == 1
+        this.referenceSweeper.progress().referencesRemoved() == 1
+        StepVerifier.create(this.albumRepository.findById(id))
+                .expectNextMatches(it -> it.photos == ["a"])
+                .expectComplete()
+                .verify()
+    }
+
+    void 'test sweeper checks more ids than one $in query takes'() {
+        given:
+        def id = this.albumRepository.insertOne(Album.of("Xiamen")).block(Duration.ofMillis(5000))
+        def stored = Mono.from(this.bucket.uploadFromPublisher("kept.txt", Flux.just(ByteBuffer.wrap("kept".bytes))))
+                .block(Duration.ofMillis(5000)).toHexString()
+        def deleted = (0..<2500).collect { ObjectId.get().toHexString() }
+        this.albumRepository.addPhotos(id, deleted + stored).block(Duration.ofMillis(5000))
+
+        when:
+        def removed = this.referenceSweeper.sweep().block(Duration.ofMillis(10000))
+
+        then:
+        removed == 2500
+        this.referenceSweeper.progress().referencesChecked() == 2501
+        this.albumRepository.findById(id).block(Duration.ofMillis(5000)).photos == [stored]
+    }
+
+    void 'test cascading delete keeps photos other albums reference'() {
+        given:
+        def id = this.albumRepository.insertOne(Album.of("Nanjing")).block(Duration.ofMillis(5000))
+        def other = this.albumRepository.insertOne(Album.of("Suzhou")).block(Duration.ofMillis(5000))
+        def stored = Mono.from(this.bucket.uploadFromPublisher("stored.txt", Flux.just(ByteBuffer.wrap("stored".bytes))))
+                .block(Duration.ofMillis(5000)).toHexString()
+        def shared = Mono.from(this.bucket.uploadFromPublisher("shared.txt", Flux.just(ByteBuffer.wrap("shared".bytes))))
+                .block(Duration.ofMillis(5000)).toHexString()
+        this.albumRepository.addPhotos(id, ["a", stored, shared, ObjectId.get().toHexString()]).block(Duration.ofMillis(5000))
+        this.albumRepository.addPhotos(other, [shared]).block(Duration.ofMillis(5000))
+
+        when:
+        def job = this.deletionJobs.start(id).block(Duration.ofMillis(5000))
+        def progress = Flux.interval(Duration.ofMillis(50))
+                .concatMap(_ -> this.deletionJobs.find(new ObjectId(job.id())))
+                .filter(it -> it.status() != AlbumDeletionJobs.Status.RUNNING)
+                .blockFirst(Duration.ofMillis(10000))
+
+        then:
+        progress.status() == AlbumDeletionJobs.Status.COMPLETED
+        progress.photos() == 4
+        progress.checked() == 4
+        progress.deleted() == 1
+        progress.kept() == 1
+        progress.missing() == 2
+        Mono.from(this.bucket.find(Filters.eq("_id", new ObjectId(stored))).first()).block(Duration.ofMillis(5000)) == null
+        Mono.from(this.bucket.find(Filters.eq("_id", new ObjectId(shared))).first()).block(Duration.ofMillis(5000)) != null
+        this.albumRepository.findById(id).block(Duration.ofMillis(5000)) == null
+        this.albumRepository.findById(other).block(Duration.ofMillis(5000)).photos == [shared]
+    }
 }
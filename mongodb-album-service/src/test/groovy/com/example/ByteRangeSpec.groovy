@@ -0,0 +1,48 @@
+package com.example
+
+import com.example.photos.ByteRange
+import spock.lang.Specification
+
+class ByteRangeSpec extends Specification {
+
+    void 'range header #header of a 1000 byte file is #start-#end'() {
+        when:
+        def range = ByteRange.parse(header, 1000)
+
+        then:
+        range.get() == new ByteRange(start, end)
+        range.get().isSatisfiable()
+        range.get().contentRange(1000) == "bytes $start-$end/1000"
+
+        where:
+        header             | start | end
+        'bytes=0-99'       | 0     | 99
+        'bytes=100-'       | 100   | 999
+        'bytes=-100'       | 900   | 999
+        'bytes=-5000'      | 0     | 999
+        'bytes=500-5000'   | 500   | 999
+        'bytes= 10 - 19 '  | 10    | 19
+    }
+
+    void 'range header #header of a 1000 byte file is not satisfiable'() {
+        expect:
+        !ByteRange.parse(header, 1000).get().isSatisfiable()
+
+        where:
+        header << ['bytes=1000-', 'bytes=1000-1999', 'bytes=-0']
+    }
+
+    void 'range header #header is ignored'() {
+        expect:
+        ByteRange.parse(header, 1000).isEmpty()
+
+        where:
+        header << [null, '', 'items=0-9', 'bytes=0-9,20-29', 'bytes=9-0', 'bytes=abc', 'bytes=a-b', 'bytes=-']
+    }
+
+    void 'the full range of a file'() {
+        expect:
+        ByteRange.full(1000).length() == 1000
+        !ByteRange.full(0).isSatisfiable()
+    }
+}
@@ -1,7 +1,10 @@
 package com.example
 
 import com.example.customers.Customer
+import com.example.customers.CustomerMatch
 import com.example.customers.CustomerRepository
+import com.example.customers.SearchCursor
+import com.fasterxml.jackson.databind.ObjectMapper
 import io.micronaut.http.HttpRequest
 import io.micronaut.http.HttpResponse
 import io.micronaut.http.HttpStatus
@@ -22,6 +25,9 @@ import spock.lang.Unroll
 @MicronautTest(environments = ["mock"], transactional = false)
 class CustomerControllerSpec extends Specification {
 
+    // each ndjson line must parse as one document on its own
+    static final ObjectMapper JSON = new ObjectMapper()
+
     @Inject
     EmbeddedApplication<?> application
 
@@ -56,7 +62,7 @@ class CustomerControllerSpec extends Specification {
 
     void 'get all customers'() {
         given:
-        1 * customerRepository.findAll() >> Flux.just(Customer.of(ObjectId.get(), "Jack", 40, null), Customer.of(ObjectId.get(), "Rose", 20, null))
+        1 * customerRepository.findAll(null, 100) >> Flux.just(Customer.of(ObjectId.get(), "Jack", 40, null), Customer.of(ObjectId.get(), "Rose", 20, null))
 
         when:
         Mono<HttpResponse<String>> resFlux = client.exchange(HttpRequest.GET("/customers"), String).log()
@@ -73,6 +79,98 @@ class CustomerControllerSpec extends Specification {
                 .verify()
     }
 
+    void 'get customers after an id with limit'() {
+        given:
+        def after = ObjectId.get()
+        1 * customerRepository.findAll(after, 1000) >> Flux.just(Customer.of(ObjectId.get(), "Jack", 40, null))
+
+        when:
+        Mono<HttpResponse<String>> resFlux = client.exchange(HttpRequest.GET("/customers?after=" + after.toHexString() + "&limit=5000"), String).log()
+
+        then:
+        StepVerifier.create(resFlux)
+                .consumeNextWith(s -> {
+                    assert s.getStatus() == HttpStatus.OK
+                    assert s.body().contains('Jack')
+                })
+                .expectComplete()
+                .verify()
+    }
+
+    void 'stream customers as ndjson'() {
+        given:
+        1 * customerRepository.findAll(null, 0) >> Flux.just(Customer.of(ObjectId.get(), "Jack", 40, null), Customer.of(ObjectId.get(), "Rose", 20, null))
+
+        when:
+        Mono<HttpResponse<String>> resFlux = client.exchange(HttpRequest.GET("/customers").accept("application/x-ndjson"), String).log()
+
+        then:
+        StepVerifier.create(resFlux)
+                .consumeNextWith(s -> {
+                    assert s.getStatus() == HttpStatus.OK
+                    def lines = s.body().readLines().findAll { !it.isBlank() }.collect { JSON.readTree(it) }
+                    assert lines.size() == 2
+                    assert lines[0].get("name").asText() == 'Jack'
+                    assert lines[1].get("name").asText() == 'Rose'
+                })
+                .expectComplete()
+                .verify()
+    }
+
+    void 'bulk import customers from ndjson'() {
+        given:
+        1 * customerRepository.insertUnordered({ it*.name == ['Jack', 'Rose'] }) >> Mono.just(2)
+
+        when:
+        def body = '{"name":"Jack","age":40}\n\nnot json\r\n{"name":"Rose","age":20}'
+        def request = HttpRequest.POST("/customers/bulk", body)
+                .contentType("application/x-ndjson")
+                .accept("application/x-ndjson")
+        Mono<HttpResponse<String>> resFlux = client.exchange(request, String).log()
+
+        then:
+        StepVerifier.create(resFlux)
+                .consumeNextWith(s -> {
+                    assert s.getStatus() == HttpStatus.OK
+                    def lines = s.body().readLines().findAll { !it.isBlank() }.collect { JSON.readTree(it) }
+                    assert lines.size() == 1
+                    assert lines[0].get("inserted").asInt() == 2
+                    assert lines[0].get("lastLine").asLong() == 4
+                    assert lines[0].get("failures")*.get("line")*.asLong() == [3L]
+                })
+                .expectComplete()
+                .verify()
+    }
+
+    void 'search customers passes the cursor of the last match'() {
+        given:
+        def cursor = new SearchCursor(1.5d, ObjectId.get())
+        1 * customerRepository.search("london", cursor, 10) >> Flux.just(new CustomerMatch(ObjectId.get(), "Charles Babbage", null, 1.1d, "1.1_" + ObjectId.get().toHexString()))
+
+        when:
+        Mono<HttpResponse<String>> resFlux = client.exchange(HttpRequest.GET("/customers/search?q=london&limit=10&after=" + cursor), String).log()
+
+        then:
+        StepVerifier.create(resFlux)
+                .consumeNextWith(s -> {
+                    assert s.getStatus() == HttpStatus.OK
+                    assert s.body().contains('Charles Babbage')
+                    assert s.body().contains('"cursor"')
+                })
+                .expectComplete()
+                .verify()
+    }
+
+    void 'search customers with an invalid cursor'() {
+        when:
+        client.exchange(HttpRequest.GET("/customers/search?q=london&after=nope"), String).block()
+
+        then:
+        0 * customerRepository.search(_, _, _)
+        def e = thrown(HttpClientResponseException)
+        e.status == HttpStatus.BAD_REQUEST
+    }
+
     void 'create a new customer'() {
         given:
         def objId = ObjectId.get()
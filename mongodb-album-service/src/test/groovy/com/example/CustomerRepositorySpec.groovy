@@ -1,8 +1,10 @@
 package com.example
 
 
+import com.example.customers.Address
 import com.example.customers.Customer
 import com.example.customers.CustomerRepository
+import com.example.customers.SearchCursor
 import groovy.util.logging.Slf4j
 import io.micronaut.runtime.EmbeddedApplication
 import io.micronaut.test.extensions.spock.annotation.MicronautTest
@@ -39,6 +41,9 @@ class CustomerRepositorySpec extends Specification {
     @Inject
     CustomerRepository customerRepository;
 
+    @Inject
+    MongoIndexes mongoIndexes
+
     def setup() {
         CountDownLatch latch = new CountDownLatch(1)
         customerRepository.deleteAll()
@@ -66,4 +71,24 @@ class CustomerRepositorySpec extends Specification {
                 .expectComplete()
                 .verify()
     }
+
+    void 'test search ranks name matches first and pages by cursor'() {
+        given:
+        this.mongoIndexes.ensureIndexes().block(Duration.ofMillis(10000L))
+        this.customerRepository.insertMany(List.of(
+                Customer.of("Ada Lovelace", 36, Address.of("12 St James's Square", "London", "SW1")),
+                Customer.of("Charles London", 45, Address.of("5 Devonshire Street", "Oxford", "OX1")),
+                Customer.of("Alan Turing", 28, Address.of("Bletchley Hall", "Bletchley Park", "MK12"))
+        )).block(Duration.ofMillis(5000L))
+
+        when:
+        def first = this.customerRepository.search("london", null, 1).collectList().block(Duration.ofMillis(5000L))
+        def next = this.customerRepository.search("london", SearchCursor.parse(first[0].cursor()), 10).collectList().block(Duration.ofMillis(5000L))
+
+        then:
+        first*.name() == ["Charles London"]
+        next*.name() == ["Ada Lovelace"]
+        next[0].address().city == "London"
+        next[0].score() < first[0].score()
+    }
 }
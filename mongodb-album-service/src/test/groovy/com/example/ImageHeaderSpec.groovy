@@ -0,0 +1,41 @@
+package com.example
+
+import com.example.photos.ImageHeader
+import org.bson.Document
+import spock.lang.Specification
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+
+class ImageHeaderSpec extends Specification {
+
+    void 'reads the dimensions of a #format image'() {
+        given:
+        def out = new ByteArrayOutputStream()
+        ImageIO.write(new BufferedImage(321, 123, BufferedImage.TYPE_INT_RGB), format, out)
+        def bytes = out.toByteArray()
+
+        when:
+        def header = ImageHeader.parse(bytes, bytes.length)
+
+        then:
+        header.width() == 321
+        header.height() == 123
+        header.toMetadata() == new Document([width: 321, height: 123])
+
+        where:
+        format << ['jpeg', 'png', 'gif']
+    }
+
+    void 'a truncated or unknown header yields no fields'() {
+        when:
+        def bytes = HexFormat.of().parseHex(hex)
+        def header = ImageHeader.parse(bytes, bytes.length)
+
+        then:
+        header.toMetadata().isEmpty()
+
+        where:
+        hex << ['ffd8ffe100', '25504446', '']
+    }
+}
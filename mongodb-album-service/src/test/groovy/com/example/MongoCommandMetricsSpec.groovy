@@ -0,0 +1,101 @@
+package com.example
+
+import com.mongodb.ConnectionString
+import com.mongodb.MongoClientSettings
+import com.mongodb.event.CommandFailedEvent
+import com.mongodb.event.CommandListener
+import com.mongodb.event.CommandStartedEvent
+import com.mongodb.event.CommandSucceededEvent
+import com.mongodb.reactivestreams.client.MongoClient
+import com.mongodb.reactivestreams.client.MongoClients
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.micronaut.context.annotation.Value
+import io.micronaut.test.extensions.spock.annotation.MicronautTest
+import org.bson.Document
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import java.time.Duration
+
+@MicronautTest(startApplication = false)
+class MongoCommandMetricsSpec extends Specification {
+
+    @Value('${mongodb.uri}')
+    String uri
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    // the driver only logs exceptions thrown by listeners, keep them to fail the test
+    List<Throwable> errors = [].asSynchronized()
+
+    @AutoCleanup
+    MongoClient client
+
+    def setup() {
+        def metrics = new MongoCommandMetrics(registry, new MongoMetricsProperties(true, Duration.ofSeconds(10)))
+        def checked = new CommandListener() {
+            @Override
+            void commandStarted(CommandStartedEvent event) {
+                check { metrics.commandStarted(event) }
+            }
+
+            @Override
+            void commandSucceeded(CommandSucceededEvent event) {
+                check { metrics.commandSucceeded(event) }
+            }
+
+            @Override
+            void commandFailed(CommandFailedEvent event) {
+                check { metrics.commandFailed(event) }
+            }
+        }
+        client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(uri))
+                .addCommandListener(checked)
+                .build())
+    }
+
+    void check(Closure<?> call) {
+        try {
+            call()
+        } catch (Throwable e) {
+            errors << e
+            throw e
+        }
+    }
+
+    void 'commands without a collection are timed with collection none'() {
+        when:
+        Mono.from(client.getDatabase("photos").runCommand(new Document("ping", 1))).block(Duration.ofSeconds(10))
+        // a database level aggregate is sent as {aggregate: 1}
+        Flux.from(client.getDatabase("photos").aggregate([new Document('$documents', [new Document("a", 1)])]))
+                .collectList().block(Duration.ofSeconds(10))
+
+        then:
+        errors.isEmpty()
+        timer("ping", "none").count() == 1
+        timer("aggregate", "none").count() == 1
+    }
+
+    void 'collection commands are timed with their collection and reuse the timer'() {
+        when:
+        2.times {
+            Flux.from(client.getDatabase("photos").getCollection("albums").aggregate([new Document('$limit', 1)]))
+                    .collectList().block(Duration.ofSeconds(10))
+        }
+
+        then:
+        errors.isEmpty()
+        timer("aggregate", "albums").count() == 2
+        registry.find("mongodb.command").tags("command", "aggregate").timers().size() == 1
+    }
+
+    private Timer timer(String command, String collection) {
+        registry.get("mongodb.command")
+                .tags("database", "photos", "command", command, "collection", collection, "outcome", "success")
+                .timer()
+    }
+}
@@ -0,0 +1,80 @@
+package com.example
+
+import com.example.customers.Customer
+import com.example.customers.CustomerRepository
+import com.example.customers.SearchCursor
+import com.example.photos.Album
+import com.mongodb.client.model.Filters
+import com.mongodb.client.model.Sorts
+import io.micronaut.test.extensions.spock.annotation.MicronautTest
+import jakarta.inject.Inject
+import org.bson.Document
+import org.bson.types.ObjectId
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.time.Duration
+
+@MicronautTest(startApplication = false)
+class MongoIndexesSpec extends Specification {
+
+    @Inject
+    MongoIndexes mongoIndexes
+
+    @Inject
+    MongoCollections mongoCollections
+
+    def setup() {
+        mongoIndexes.ensureIndexes().block(Duration.ofSeconds(10))
+    }
+
+    void 'provisioning indexes again is a no-op'() {
+        when:
+        new MongoIndexes(mongoCollections).ensureIndexes().block(Duration.ofSeconds(10))
+
+        then:
+        noExceptionThrown()
+    }
+
+    void 'query #query does not scan the collection'() {
+        when:
+        def plan = Mono.from(publisher(mongoCollections).explain(Document)).block(Duration.ofSeconds(10))
+
+        then:
+        def stages = stages(winningPlan(plan))
+        !stages.isEmpty()
+        !stages.contains("COLLSCAN")
+
+        where:
+        query                     | publisher
+        'albums by name'          | { MongoCollections c -> c.get("photos", "albums", Album).find(Filters.and(Filters.eq("name", "Guangzhou"), Filters.gt("_id", new ObjectId()))).sort(Sorts.ascending("_id")) }
+        'albums containing photo' | { MongoCollections c -> c.get("photos", "albums", Album).find(Filters.eq("photos", new ObjectId().toHexString())).sort(Sorts.ascending("_id")) }
+        'customers by city'       | { MongoCollections c -> c.get("userdb", "customers", Customer).find(Filters.and(Filters.eq("address.city", "London"), Filters.gte("age", 18))).sort(Sorts.ascending("age")) }
+        'customers search'        | { MongoCollections c -> c.get("userdb", "customers", Document).aggregate(CustomerRepository.searchPipeline("london", null, 100)) }
+        'customers search after'  | { MongoCollections c -> c.get("userdb", "customers", Document).aggregate(CustomerRepository.searchPipeline("london", new SearchCursor(1.5d, new ObjectId()), 100)) }
+        'photos by width'         | { MongoCollections c -> c.get("photos", "fs.files", Document).find(Filters.and(Filters.exists("metadata.derivativeOf", false), Filters.gte("metadata.width", 1024))).sort(Sorts.ascending("_id")) }
+        'photos taken after'      | { MongoCollections c -> c.get("photos", "fs.files", Document).find(Filters.and(Filters.exists("metadata.derivativeOf", false), Filters.gt("metadata.takenAt", new Date(0)))).sort(Sorts.ascending("_id")) }
+        'photos by content type'  | { MongoCollections c -> c.get("photos", "fs.files", Document).find(Filters.and(Filters.exists("metadata.derivativeOf", false), Filters.eq("metadata.contentType", "image/jpeg"))).sort(Sorts.ascending("_id")) }
+    }
+
+    // an aggregation not pushed down to the query layer as a whole explains its first stage under $cursor
+    private static Document winningPlan(Document explained) {
+        def planner = explained.get("queryPlanner", Document)
+                ?: explained.getList("stages", Document, []).find { it.containsKey('$cursor') }?.get('$cursor', Document)?.get("queryPlanner", Document)
+        return planner?.get("winningPlan", Document)
+    }
+
+    // stage names of a plan, newer servers nest the classic plan under queryPlan
+    private static List<String> stages(Document plan) {
+        if (plan == null) {
+            return []
+        }
+        if (plan.containsKey("queryPlan")) {
+            return stages(plan.get("queryPlan", Document))
+        }
+        def result = [plan.getString("stage")]
+        result.addAll(stages(plan.get("inputStage", Document)))
+        plan.getList("inputStages", Document, []).each { result.addAll(stages(it)) }
+        return result
+    }
+}
@@ -0,0 +1,86 @@
+package com.example
+
+import com.example.photos.Album
+import com.example.photos.AlbumRepository
+import io.micronaut.context.annotation.Property
+import io.micronaut.http.HttpRequest
+import io.micronaut.http.HttpStatus
+import io.micronaut.http.MediaType
+import io.micronaut.http.client.annotation.Client
+import io.micronaut.http.client.multipart.MultipartBody
+import io.micronaut.reactor.http.client.ReactorHttpClient
+import io.micronaut.test.extensions.spock.annotation.MicronautTest
+import jakarta.inject.Inject
+import spock.lang.Specification
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+import java.time.Duration
+import java.util.zip.CRC32
+import java.util.zip.ZipInputStream
+
+@MicronautTest(transactional = false)
+@Property(name = "photos.store.type", value = "local")
+@Property(name = "photos.store.local-root", value = "build/test-photo-store")
+class PhotoArchiveSpec extends Specification {
+
+    @Inject
+    @Client("/")
+    ReactorHttpClient client
+
+    @Inject
+    AlbumRepository albumRepository
+
+    void 'photos uploaded to the local store are archived with the CRC recorded at upload'() {
+        given: 'content larger than one multipart part, under the 1MB upload limit'
+        def content = new byte[768 * 1024 + 17]
+        new Random(20).nextBytes(content)
+        def crc = new CRC32()
+        crc.update(content)
+        def id = upload("random.bin", MediaType.APPLICATION_OCTET_STREAM_TYPE, content)
+        def album = this.albumRepository.insertOne(Album.of("Archive")).block(Duration.ofMillis(5000))
+        this.albumRepository.addPhotos(album, [id]).block(Duration.ofMillis(5000))
+
+        when:
+        def response = client.toBlocking().exchange(HttpRequest.GET("/albums/$album/archive"), byte[])
+
+        then: 'ZipInputStream checks the local header CRC against the content'
+        response.status() == HttpStatus.OK
+        def zip = new ZipInputStream(new ByteArrayInputStream(response.body()))
+        def entry = zip.nextEntry
+        entry.name == "random.bin"
+        entry.crc == crc.value
+        zip.readAllBytes() == content
+        zip.nextEntry == null
+    }
+
+    void 'image dimensions are recorded once the whole upload has been read'() {
+        given: 'a noisy image, so its PNG spans several multipart parts'
+        def image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB)
+        def random = new Random(21)
+        for (int x = 0; x < image.width; x++) {
+            for (int y = 0; y < image.height; y++) {
+                image.setRGB(x, y, random.nextInt())
+            }
+        }
+        def out = new ByteArrayOutputStream()
+        ImageIO.write(image, "png", out)
+        def id = upload("noise.png", MediaType.IMAGE_PNG_TYPE, out.toByteArray())
+
+        when:
+        def info = client.toBlocking().retrieve(HttpRequest.GET("/photos/$id/info"), Map)
+
+        then:
+        info.width == 400
+        info.height == 300
+        info.contentType == "image/png"
+    }
+
+    private String upload(String filename, MediaType contentType, byte[] content) {
+        def body = MultipartBody.builder().addPart("file", filename, contentType, content).build()
+        def response = client.toBlocking().exchange(
+                HttpRequest.POST("/photos", body).contentType(MediaType.MULTIPART_FORM_DATA_TYPE), Map)
+        assert response.status() == HttpStatus.OK
+        response.body().id
+    }
+}
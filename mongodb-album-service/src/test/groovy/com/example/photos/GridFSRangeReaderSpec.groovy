@@ -0,0 +1,98 @@
+package com.example.photos
+
+import com.example.MongoCollections
+import com.mongodb.MongoGridFSException
+import com.mongodb.client.gridfs.model.GridFSUploadOptions
+import com.mongodb.client.model.Filters
+import com.mongodb.client.model.Updates
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket
+import io.micronaut.test.extensions.spock.annotation.MicronautTest
+import jakarta.inject.Inject
+import org.bson.Document
+import org.bson.types.Binary
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.time.Duration
+
+@MicronautTest(startApplication = false)
+class GridFSRangeReaderSpec extends Specification {
+    static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".bytes
+
+    @Inject
+    GridFSRangeReader reader
+
+    @Inject
+    GridFSBucket bucket
+
+    @Inject
+    MongoCollections mongoCollections
+
+    void 'a file rechunked after it was looked up is read in its new layout'() {
+        given: 'a file stored in 4 byte chunks'
+        def id = Mono.from(bucket.uploadFromPublisher("range.txt", Flux.just(ByteBuffer.wrap(CONTENT)),
+                new GridFSUploadOptions().chunkSizeBytes(4))).block(Duration.ofSeconds(5))
+        def stale = Mono.from(bucket.find(Filters.eq("_id", id)).first()).block(Duration.ofSeconds(5))
+
+        and: 'rewritten in 10 byte chunks the way the rechunk job leaves them'
+        rechunk(id, 10)
+
+        when:
+        def range = ByteRange.parse("bytes=$from-$to", CONTENT.length).get()
+        def read = read(stale, range)
+
+        then:
+        stale.chunkSize == 4
+        read == Arrays.copyOfRange(CONTENT, from, to + 1)
+
+        where:
+        from | to
+        0    | 35
+        5    | 13
+        30   | 35
+    }
+
+    void 'chunks of another layout are never sliced'() {
+        given: 'a file whose chunks were rewritten but whose chunk size was not updated'
+        def id = Mono.from(bucket.uploadFromPublisher("range.txt", Flux.just(ByteBuffer.wrap(CONTENT)),
+                new GridFSUploadOptions().chunkSizeBytes(4))).block(Duration.ofSeconds(5))
+        def file = Mono.from(bucket.find(Filters.eq("_id", id)).first()).block(Duration.ofSeconds(5))
+        rechunk(id, 10)
+        Mono.from(files().updateOne(Filters.eq("_id", id), Updates.set("chunkSize", 4))).block(Duration.ofSeconds(5))
+
+        when:
+        read(file, ByteRange.full(CONTENT.length))
+
+        then:
+        thrown(MongoGridFSException)
+    }
+
+    private byte[] read(file, ByteRange range) {
+        def out = new ByteArrayOutputStream()
+        reader.read(file, range).doOnNext { buffer ->
+            def bytes = new byte[buffer.remaining()]
+            buffer.get(bytes)
+            out.write(bytes)
+        }.blockLast(Duration.ofSeconds(5))
+        out.toByteArray()
+    }
+
+    private void rechunk(id, int chunkSize) {
+        def chunks = mongoCollections.get("photos", "fs.chunks", Document)
+        Mono.from(chunks.deleteMany(Filters.eq("files_id", id))).block(Duration.ofSeconds(5))
+        def rewritten = (0..<((CONTENT.length + chunkSize - 1).intdiv(chunkSize))).collect { n ->
+            new Document("files_id", id)
+                    .append("n", n)
+                    .append("data", new Binary(Arrays.copyOfRange(CONTENT, n * chunkSize, Math.min(CONTENT.length, (n + 1) * chunkSize))))
+                    .append(GridFSRechunkJob.CHUNK_SIZE, chunkSize)
+        }
+        Mono.from(chunks.insertMany(rewritten)).block(Duration.ofSeconds(5))
+        Mono.from(files().updateOne(Filters.eq("_id", id), Updates.set("chunkSize", chunkSize))).block(Duration.ofSeconds(5))
+    }
+
+    private files() {
+        mongoCollections.get("photos", "fs.files", Document)
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.photos
+
+import com.mongodb.client.model.Filters
+import com.mongodb.reactivestreams.client.gridfs.GridFSBucket
+import io.micronaut.test.extensions.spock.annotation.MicronautTest
+import jakarta.inject.Inject
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import javax.imageio.ImageIO
+import java.awt.image.BufferedImage
+import java.time.Duration
+import java.util.zip.CRC32
+
+@MicronautTest(startApplication = false)
+class ResumableUploadsSpec extends Specification {
+
+    @Inject
+    ResumableUploads resumableUploads
+
+    @Inject
+    StorageStatsService storageStats
+
+    @Inject
+    GridFSBucket bucket
+
+    void 'the continued CRC of #parts parts is the CRC of the whole content'() {
+        given:
+        def content = new byte[100_000]
+        new Random(parts).nextBytes(content)
+        def whole = new CRC32()
+        whole.update(content)
+
+        when:
+        long crc = 0
+        content.toList().collate(content.length.intdiv(parts) + 1).each { crc = ResumableUploads.crc(crc, it as byte[]) }
+
+        then:
+        crc == whole.value
+
+        where:
+        parts << [1, 3, 7]
+    }
+
+    void 'a completed upload records its CRC, image header and storage stats'() {
+        given: 'a noisy PNG of a few chunks, sent in appends that end inside chunks'
+        def image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB)
+        def random = new Random(12)
+        for (int x = 0; x < image.width; x++) {
+            for (int y = 0; y < image.height; y++) {
+                image.setRGB(x, y, random.nextInt())
+            }
+        }
+        def out = new ByteArrayOutputStream()
+        ImageIO.write(image, "png", out)
+        def content = out.toByteArray()
+        def crc = new CRC32()
+        crc.update(content)
+        def before = storageStats.global().block(Duration.ofSeconds(5))
+        def session = resumableUploads.create(new CreateUploadSessionDto("noise.png", "image/png", content.length as Long))
+                .block(Duration.ofSeconds(5))
+        def id = session.getObjectId("_id")
+
+        when:
+        long offset = 0
+        for (def piece : [100_000, 250_000, content.length - 350_000]) {
+            def body = Arrays.copyOfRange(content, (int) offset, (int) offset + piece)
+            offset = resumableUploads.append(id, offset, Flux.just(body)).block(Duration.ofSeconds(5))
+        }
+        def fileId = resumableUploads.complete(id).block(Duration.ofSeconds(5))
+        def file = Mono.from(bucket.find(Filters.eq("_id", fileId)).first()).block(Duration.ofSeconds(5))
+        def after = storageStats.global().block(Duration.ofSeconds(5))
+
+        then:
+        content.length > 350_000
+        file.length == content.length
+        file.metadata.getLong(AlbumArchiver.CRC32) == crc.value
+        file.metadata.getInteger(ImageHeader.WIDTH) == 400
+        file.metadata.getInteger(ImageHeader.HEIGHT) == 300
+        after.photos() == before.photos() + 1
+        after.bytes() == before.bytes() + content.length
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.photos
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.CRC32
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+
+// same package as ZipStream, which is package-private
+class ZipStreamSpec extends Specification {
+
+    static final Date MODIFIED = new Date(1700000000000L)
+
+    void 'entries read back with ZipFile (zip32 limit #limit, crc known #crcKnown)'() {
+        given:
+        def entries = [['a.jpg', bytes(1000, 1)], ['b.png', bytes(70000, 2)], ['a.jpg', bytes(0, 3)], ['c', bytes(5, 4)]]
+
+        when:
+        def archive = write(new ZipStream(limit), entries, crcKnown)
+
+        then:
+        def zip = new ZipFile(archive.toFile())
+        def read = zip.entries().toList()
+        read*.name == ['a.jpg', 'b.png', 'a-2.jpg', 'c']
+        read*.size == entries.collect { it[1].length as long }
+        read*.crc == entries.collect { crc(it[1]) }
+        read.withIndex().every { entry, i -> zip.getInputStream(entry).readAllBytes() == entries[i][1] }
+
+        cleanup:
+        zip?.close()
+        Files.deleteIfExists(archive)
+
+        where:
+        limit       | crcKnown
+        0xFFFFFFFFL | true
+        0xFFFFFFFFL | false
+        // every size and offset past the limit takes the Zip64 branch
+        10L         | true
+        10L         | false
+    }
+
+    void 'entries with a known CRC read back with ZipInputStream (zip32 limit #limit)'() {
+        given:
+        def entries = [['a.jpg', bytes(1000, 1)], ['a.jpg', bytes(300, 2)]]
+
+        when:
+        def archive = write(new ZipStream(limit), entries, true)
+
+        then:
+        def input = new ZipInputStream(Files.newInputStream(archive))
+        def first = input.nextEntry
+        first.name == 'a.jpg'
+        input.readAllBytes() == entries[0][1]
+        def second = input.nextEntry
+        second.name == 'a-1.jpg'
+        input.readAllBytes() == entries[1][1]
+        input.nextEntry == null
+
+        cleanup:
+        input?.close()
+        Files.deleteIfExists(archive)
+
+        where:
+        limit << [0xFFFFFFFFL, 10L]
+    }
+
+    void 'an entry not matching its recorded CRC fails'() {
+        given:
+        def zip = new ZipStream()
+        zip.startEntry('a.jpg', '1', 3, MODIFIED, 42L)
+        zip.data(ByteBuffer.wrap([1, 2, 3] as byte[]))
+
+        when:
+        zip.endEntry()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    private static Path write(ZipStream zip, List entries, boolean crcKnown) {
+        def archive = Files.createTempFile('zipstream', '.zip')
+        Channels.newChannel(Files.newOutputStream(archive)).withCloseable { out ->
+            entries.eachWithIndex { entry, i ->
+                byte[] content = entry[1]
+                out.write(zip.startEntry(entry[0], String.valueOf(i), content.length, MODIFIED, crcKnown ? crc(content) : null))
+                // content arrives in several buffers
+                content.toList().collate(4096).each { out.write(zip.data(ByteBuffer.wrap(it as byte[]))) }
+                out.write(zip.endEntry())
+            }
+            zip.centralDirectory().each { out.write(it) }
+        }
+        return archive
+    }
+
+    private static byte[] bytes(int size, long seed) {
+        def bytes = new byte[size]
+        new Random(seed).nextBytes(bytes)
+        return bytes
+    }
+
+    private static long crc(byte[] content) {
+        def crc = new CRC32()
+        crc.update(content)
+        return crc.value
+    }
+}